@@ -0,0 +1,59 @@
+package io.github.zanella.tetris;
+
+import java.util.Random;
+
+/**
+ * Repeatable wells for the benchmarks, the same seed always gives the same board
+ */
+public class Boards {
+    static final int COLUMNS = 13, ROWS = 26; // TetrisCrush's well
+
+    public enum Fill {
+        EMPTY(0), HALF_FULL(50), NEAR_TOP(90);
+
+        final int percent;
+
+        Fill(int percent) { this.percent = percent; }
+    }
+
+    /**
+     * Stacks random squares from the bottom up, every row with a single gap so none of them is full
+     */
+    static Well well(final Fill fill, final long seed) {
+        final Well well = new Well(COLUMNS, ROWS);
+        final Random random = new Random(seed);
+
+        final int playRows = ROWS - 1;
+        final int filledRows = (playRows * fill.percent) / 100;
+
+        for (int j = ROWS - 2; j > (ROWS - 2) - filledRows; j--) {
+            final int gap = 1 + random.nextInt(COLUMNS - 2);
+
+            for (int i = 1; i < (COLUMNS - 1); i++) {
+                if (i != gap) { well.set(i, j, randomColor(random)); }
+            }
+        }
+
+        return well;
+    }
+
+    /**
+     * Same as {@link #well(Fill, long)}, with the bottom rows completely filled
+     */
+    static Well wellWithFullRows(final Fill fill, final long seed, final int fullRows) {
+        final Well well = well(fill, seed);
+        final Random random = new Random(seed);
+
+        for (int j = ROWS - 2; j > (ROWS - 2) - fullRows; j--) {
+            for (int i = 1; i < (COLUMNS - 1); i++) {
+                well.set(i, j, randomColor(random));
+            }
+        }
+
+        return well;
+    }
+
+    static byte randomColor(final Random random) {
+        return Well.paletteIndex(random.nextInt(Tetraminos.COLORS.length));
+    }
+}
@@ -0,0 +1,73 @@
+package io.github.zanella.tetris;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Crush matching and piece fixing on empty, half-full and near-topped-out boards
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CrushEngineBenchmark {
+    @Param({"EMPTY", "HALF_FULL", "NEAR_TOP"})
+    public Boards.Fill fill;
+
+    private Well template;
+
+    private CrushEngine engine;
+
+    private int matchX, matchY;
+    private byte matchColor;
+
+    @Setup
+    public void setup() {
+        template = Boards.well(fill, 42);
+
+        { // A vertical stretch of 3 in the middle of the stack, or on the floor of an empty well
+            final Random random = new Random(42);
+            matchColor = Boards.randomColor(random);
+            matchX = Boards.COLUMNS / 2;
+            matchY = Math.min(Boards.ROWS - 2, (Boards.ROWS - 1) - (((Boards.ROWS - 1) * fill.percent) / 200));
+
+            for (int y = matchY; y > matchY - 3; y--) { template.set(matchX, y, matchColor); }
+        }
+
+        engine = new CrushEngine(Boards.COLUMNS, Boards.ROWS);
+    }
+
+    private void restart() {
+        if (engine.isOver()) { engine.step(CrushEngine.Input.RESET); }
+
+        engine.well().copyFrom(template);
+    }
+
+    // Baseline for the benchmarks below
+    @Benchmark
+    public CrushEngine restartOnly() {
+        restart();
+
+        return engine;
+    }
+
+    @Benchmark
+    public boolean clearMatches() {
+        restart();
+
+        return engine.clearMatches(matchX, matchY, matchColor);
+    }
+
+    // Drop, fixToWell, clearRows and the next piece
+    @Benchmark
+    public long fixToWell() {
+        restart();
+        engine.step(CrushEngine.Input.HARD_DROP);
+
+        return engine.score();
+    }
+}
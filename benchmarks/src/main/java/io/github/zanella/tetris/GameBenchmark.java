@@ -0,0 +1,43 @@
+package io.github.zanella.tetris;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Whole-game throughput: each operation places one piece, starting over once the well tops out
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameBenchmark {
+    private static final CrushEngine.Input[] MOVES = {
+            CrushEngine.Input.LEFT, CrushEngine.Input.RIGHT, CrushEngine.Input.ROTATE
+    };
+
+    private CrushEngine engine;
+
+    private Random random;
+
+    @Setup
+    public void setup() {
+        engine = new CrushEngine(Boards.COLUMNS, Boards.ROWS, 42);
+        random = new Random(42);
+    }
+
+    @Benchmark
+    public long piecesPlaced() {
+        if (engine.isOver()) { engine.step(CrushEngine.Input.RESET); }
+
+        for (int i = random.nextInt(6); i > 0; i--) {
+            engine.step(MOVES[random.nextInt(MOVES.length)]);
+        }
+        engine.step(CrushEngine.Input.HARD_DROP);
+
+        return engine.score();
+    }
+}
@@ -0,0 +1,98 @@
+package io.github.zanella.tetris;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Hot paths of the well: collision tests, drops and row clearing, on empty, half-full and near-topped-out boards
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WellBenchmark {
+    @Param({"EMPTY", "HALF_FULL", "NEAR_TOP"})
+    public Boards.Fill fill;
+
+    private Well template, fullRowsTemplate, well;
+
+    @Setup
+    public void setup() {
+        template = Boards.well(fill, 42);
+        fullRowsTemplate = Boards.wellWithFullRows(fill, 42, 4);
+        well = new Well(Boards.COLUMNS, Boards.ROWS);
+    }
+
+    /**
+     * Every piece and rotation, at every column and row of the board
+     */
+    @Benchmark
+    public int collidesAt() {
+        int collisions = 0;
+
+        for (int p = 0; p < Tetraminos.PIECES.length; p++) {
+            for (int r = 0; r < 4; r++) {
+                for (int x = 0; x < Boards.COLUMNS; x++) {
+                    for (int y = 0; y < Boards.ROWS; y++) {
+                        if (template.collides(p, r, x, y)) { collisions++; }
+                    }
+                }
+            }
+        }
+
+        return collisions;
+    }
+
+    /**
+     * Where every piece and rotation lands from the top of every column it fits in, as a hard drop finds it
+     */
+    @Benchmark
+    public int dropY() {
+        int rows = 0;
+
+        for (int p = 0; p < Tetraminos.PIECES.length; p++) {
+            for (int r = 0; r < 4; r++) {
+                for (int x = 0; x < Boards.COLUMNS; x++) {
+                    if (!template.collides(p, r, x, 0)) { rows += template.dropY(p, r, x, 0); }
+                }
+            }
+        }
+
+        return rows;
+    }
+
+    // Baseline for the benchmarks below, which all start from a fresh copy of their template
+    @Benchmark
+    public Well copy() {
+        well.copyFrom(fullRowsTemplate);
+
+        return well;
+    }
+
+    @Benchmark
+    public Well deleteRow() {
+        well.copyFrom(fullRowsTemplate);
+        well.deleteRow(Boards.ROWS - 2);
+
+        return well;
+    }
+
+    // A 4-line clear
+    @Benchmark
+    public int clearRows() {
+        well.copyFrom(fullRowsTemplate);
+
+        return well.clearRows();
+    }
+
+    // Nothing to clear, just the full scan
+    @Benchmark
+    public int clearRowsNoop() {
+        well.copyFrom(template);
+
+        return well.clearRows();
+    }
+}
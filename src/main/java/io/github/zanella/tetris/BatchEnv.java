@@ -0,0 +1,200 @@
+package io.github.zanella.tetris;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import static io.github.zanella.tetris.Tetraminos.*;
+
+/**
+ * Gym-style environment over many TetrisCrush boards at once: {@link #reset()} and {@link #step(int[])} move
+ * every board in lockstep, and what agents see comes back in flat primitive arrays, board after board,
+ * rather than as one object per board.
+ *
+ * Each board is a CrushEngine, so the rules are the game's own. Boards are stepped in ranges, split over
+ * a ForkJoinPool; a board is only touched by the task that owns its range, and each one writes its own
+ * slices of the arrays. Only rows that changed are copied into the observations.
+ *
+ * A board that tops out is reported done, and starts over with the next step.
+ */
+class BatchEnv {
+    // Actions, after which come the swaps: SWAPS + ((y * columns + x) << 1 | (1 if with the square below, 0 if to the right))
+    static final int NOOP = 0, ROTATE = 1, SOFT_DROP = 2, LEFT = 3, RIGHT = 4, HARD_DROP = 5, SWAPS = 6;
+
+    static final int PIECE_FIELDS = 5; // piece, rotation, x, y and the next piece, in piece[]
+
+    private static final int GRAIN = 64; // boards per task, at least
+
+    private static final CrushEngine.Input[] MOVES = {
+            null, CrushEngine.Input.ROTATE, CrushEngine.Input.DROP, CrushEngine.Input.LEFT,
+            CrushEngine.Input.RIGHT, CrushEngine.Input.HARD_DROP
+    };
+
+    final int boards, columns, rows;
+
+    private final int ticksPerDrop; // steps between gravity drops
+
+    private final long seed;
+
+    private final ForkJoinPool pool;
+
+    private final CrushEngine[] engines;
+
+    private final long[] steps; // since the board started over
+
+    // Observations, board after board: occupancy bits by row, palette index by cell, and the pieces
+    final long[] occupancy;
+    final byte[] cells;
+    final int[] piece;
+
+    final long[] score;
+
+    // Of the last step
+    final float[] reward;
+    final boolean[] done;
+
+    private int[] actions; // of the step in progress
+
+    /**
+     * @param ticksPerDrop gravity drops the piece every these many steps
+     */
+    BatchEnv(int boards, int columns, int rows, int ticksPerDrop, long seed, final ForkJoinPool pool) {
+        if (boards <= 0) { throw new IllegalArgumentException("Boards must be positive, got " + boards); }
+        if (ticksPerDrop <= 0) { throw new IllegalArgumentException("Ticks per drop must be positive, got " + ticksPerDrop); }
+
+        this.boards = boards;
+        this.columns = columns;
+        this.rows = rows;
+        this.ticksPerDrop = ticksPerDrop;
+        this.seed = seed;
+        this.pool = pool;
+        this.engines = new CrushEngine[boards];
+        this.steps = new long[boards];
+        this.occupancy = new long[boards * rows];
+        this.cells = new byte[boards * rows * columns];
+        this.piece = new int[boards * PIECE_FIELDS];
+        this.score = new long[boards];
+        this.reward = new float[boards];
+        this.done = new boolean[boards];
+    }
+
+    BatchEnv(int boards, int columns, int rows, long seed) { this(boards, columns, rows, 1, seed, ForkJoinPool.commonPool()); }
+
+    int actions() { return SWAPS + (rows * columns * 2); }
+
+    /**
+     * New games on every board, each with its own seed drawn from the environment's
+     */
+    void reset() {
+        final SplittableRandom seeds = new SplittableRandom(seed);
+
+        for (int b = 0; b < boards; b++) { engines[b] = new CrushEngine(columns, rows, seeds.nextLong()); }
+
+        actions = null;
+        pool.invoke(new Range(0, boards));
+    }
+
+    /**
+     * Applies an action to every board, then gravity when it's due, and fills in the observations,
+     * rewards (points scored) and done flags
+     */
+    void step(final int[] actions) {
+        if (engines[0] == null) { throw new IllegalStateException("reset() first"); }
+        if (actions.length != boards) { throw new IllegalArgumentException(boards + " actions needed, got " + actions.length); }
+
+        for (final int action : actions) {
+            if (action < 0 || action >= actions()) { throw new IllegalArgumentException("No such action " + action); }
+        }
+
+        this.actions = actions;
+        pool.invoke(new Range(0, boards));
+        this.actions = null;
+    }
+
+    CrushEngine engine(int board) { return engines[board]; }
+
+    private void step(int b) {
+        final CrushEngine engine = engines[b];
+
+        if (engine.isOver()) {
+            engine.step(CrushEngine.Input.RESET);
+            steps[b] = 0;
+        }
+
+        final long before = engine.score();
+        final int action = actions[b];
+
+        if (action >= SWAPS) {
+            final int swap = action - SWAPS, square = swap >>> 1;
+            final int x = square % columns, y = square / columns;
+
+            engine.deselect();
+            engine.select(x, y);
+            if ((swap & 1) == 0) { engine.select(x + 1, y); } else { engine.select(x, y + 1); }
+        } else if (action != NOOP) {
+            engine.step(MOVES[action]);
+        }
+
+        steps[b] += 1;
+        if ((steps[b] % ticksPerDrop) == 0) { engine.tick(); }
+
+        reward[b] = engine.score() - before;
+        done[b] = engine.isOver();
+    }
+
+    // Copies what changed on the board into the observations
+    private void observe(int b, boolean everything) {
+        final CrushEngine engine = engines[b];
+        final Well well = engine.well();
+
+        for (int y = 0; y < rows; y++) {
+            if (!everything && well.dirtyColumns(y) == 0) { continue; }
+
+            occupancy[(b * rows) + y] = well.row(y);
+
+            final int from = ((b * rows) + y) * columns;
+            for (int x = 0; x < columns; x++) { cells[from + x] = well.get(x, y); }
+        }
+        well.clearDirty();
+
+        final Tetramino current = engine.currentPiece();
+        final int p = b * PIECE_FIELDS;
+        piece[p] = current.piece;
+        piece[p + 1] = current.rotation;
+        piece[p + 2] = current.x;
+        piece[p + 3] = current.y;
+        piece[p + 4] = engine.upcoming(0).piece;
+
+        score[b] = engine.score();
+    }
+
+    private final class Range extends RecursiveAction {
+        private final int from, to;
+
+        Range(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if ((to - from) > GRAIN && (to - from) > (boards / (4 * pool.getParallelism()))) {
+                final int middle = (from + to) >>> 1;
+                invokeAll(new Range(from, middle), new Range(middle, to));
+                return;
+            }
+
+            for (int b = from; b < to; b++) {
+                if (actions == null) { // reset
+                    reward[b] = 0;
+                    done[b] = false;
+                    steps[b] = 0;
+                } else {
+                    step(b);
+                }
+
+                observe(b, actions == null);
+            }
+        }
+    }
+}
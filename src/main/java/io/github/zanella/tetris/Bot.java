@@ -0,0 +1,319 @@
+package io.github.zanella.tetris;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import static io.github.zanella.tetris.Tetraminos.*;
+
+/**
+ * Placement search: tries every rotation/column the current piece can reach from where it spawns,
+ * drops it, and scores the resulting well with {@link Weights}, looking ahead through the upcoming
+ * pieces. The placements of the current piece are evaluated in parallel, one fork/join task each.
+ *
+ * The search works on copies of the occupancy bitboard only, colors don't matter for it.
+ */
+class Bot {
+    /**
+     * How much each feature of a well is worth; the defaults are the well known ones by Yiyuan Lee
+     */
+    static final class Weights {
+        static final Weights DEFAULT = new Weights(-0.510066, 0.760666, -0.35663, -0.184483);
+
+        final double aggregateHeight, linesCleared, holes, bumpiness;
+
+        Weights(double aggregateHeight, double linesCleared, double holes, double bumpiness) {
+            this.aggregateHeight = aggregateHeight;
+            this.linesCleared = linesCleared;
+            this.holes = holes;
+            this.bumpiness = bumpiness;
+        }
+    }
+
+    static final class Placement {
+        final int rotation, x; // where the piece goes, it lands wherever dropping it there ends
+
+        final double value;
+
+        Placement(int rotation, int x, double value) {
+            this.rotation = rotation;
+            this.x = x;
+            this.value = value;
+        }
+
+        @Override
+        public String toString() { return "Placement(rotation=" + rotation + ", x=" + x + ", value=" + value + ")"; }
+    }
+
+    private final Weights weights;
+
+    private final int lookahead; // how many upcoming pieces to search, up to CrushEngine.PREVIEW
+
+    private final ForkJoinPool pool;
+
+    Bot(final Weights weights, final int lookahead, final ForkJoinPool pool) {
+        if (lookahead < 0 || lookahead > CrushEngine.PREVIEW) {
+            throw new IllegalArgumentException("Lookahead must be 0.." + CrushEngine.PREVIEW + ", got " + lookahead);
+        }
+
+        this.weights = weights;
+        this.lookahead = lookahead;
+        this.pool = pool;
+    }
+
+    Bot() { this(Weights.DEFAULT, 1, ForkJoinPool.commonPool()); }
+
+    /**
+     * @return null if the current piece can't go anywhere
+     */
+    Placement best(final CrushEngine engine) {
+        final Well well = engine.well();
+
+        final long[] rows = new long[well.rows];
+        for (int y = 0; y < well.rows; y++) { rows[y] = well.row(y); }
+
+        final int[] pieces = new int[1 + lookahead];
+        pieces[0] = engine.currentPiece().piece;
+        for (int i = 0; i < lookahead; i++) { pieces[1 + i] = engine.upcoming(i).piece; }
+
+        final Board board = new Board(well.columns, well.fullRow(), engine.rules.rotation(), rows);
+        final Tetramino spawn = engine.currentPiece();
+
+        final List<Search> searches = new ArrayList<>();
+        for (int r = 0; r < 4; r++) {
+            for (int x = 0; x < well.columns; x++) {
+                if (board.reachable(pieces[0], spawn.rotation, spawn.x, spawn.y, r, x)) {
+                    searches.add(new Search(board, pieces, r, x));
+                }
+            }
+        }
+
+        if (searches.isEmpty()) { return null; }
+
+        return pool.invoke(new RecursiveTask<Placement>() {
+            @Override
+            protected Placement compute() {
+                invokeAll(searches);
+
+                Placement best = null;
+                for (final Search search : searches) {
+                    final Placement p = search.join();
+                    if (best == null || p.value > best.value) { best = p; }
+                }
+
+                return best;
+            }
+        });
+    }
+
+    /**
+     * Searches and then plays the best placement: rotate, slide and hard drop
+     *
+     * @return false if there was nowhere to put the piece, or the game is paused or over
+     */
+    boolean play(final CrushEngine engine) {
+        if (engine.isPaused() || engine.isOver()) { return false; }
+
+        final Placement best = best(engine);
+        if (best == null) { return false; }
+
+        final Tetramino piece = engine.currentPiece();
+
+        final int turn = engine.rules.rotation(); // the way a ROTATE turns, the search went the same way
+        for (int r = piece.rotation; r != best.rotation; r = rotation(r + turn)) {
+            engine.step(CrushEngine.Input.ROTATE);
+        }
+
+        final CrushEngine.Input slide = (best.x > piece.x) ? CrushEngine.Input.RIGHT : CrushEngine.Input.LEFT;
+        for (int i = Math.abs(best.x - piece.x); i > 0; i--) { engine.step(slide); }
+
+        engine.step(CrushEngine.Input.HARD_DROP);
+
+        return true;
+    }
+
+    /**
+     * Plays a crush swap that matches, if there is one
+     *
+     * @return false if the board has none, or the game is paused or over
+     */
+    boolean swap(final CrushEngine engine) {
+        if (engine.isPaused() || engine.isOver()) { return false; }
+
+        final int swap = engine.hints().any();
+        if (swap < 0) { return false; }
+
+        engine.deselect();
+        engine.select(SwapHints.x(swap), SwapHints.y(swap));
+        engine.select(SwapHints.otherX(swap), SwapHints.otherY(swap));
+
+        return true;
+    }
+
+    // Scores one placement of the first piece, and the best follow-ups of the upcoming ones
+    private final class Search extends RecursiveTask<Placement> {
+        private final Board board;
+        private final int[] pieces;
+        private final int rotation, x;
+
+        Search(final Board board, final int[] pieces, int rotation, int x) {
+            this.board = board;
+            this.pieces = pieces;
+            this.rotation = rotation;
+            this.x = x;
+        }
+
+        @Override
+        protected Placement compute() {
+            // One scratch board per depth, reused by every branch of this task
+            final Board[] scratch = new Board[pieces.length];
+            for (int d = 0; d < pieces.length; d++) { scratch[d] = board.copy(); }
+
+            return new Placement(rotation, x, value(scratch, 0, board, rotation, x));
+        }
+
+        private double value(final Board[] scratch, int depth, final Board from, int rotation, int x) {
+            final Board next = scratch[depth].copyFrom(from);
+            final int lines = next.drop(pieces[depth], rotation, x);
+
+            if ((depth + 1) == pieces.length) { return next.evaluate(weights, lines); }
+
+            double best = Double.NEGATIVE_INFINITY;
+            for (int r = 0; r < 4; r++) {
+                for (int nx = 0; nx < next.columns; nx++) {
+                    if (next.reachable(pieces[depth + 1], 0, SPAWN_X, SPAWN_Y, r, nx)) {
+                        best = Math.max(best, value(scratch, depth + 1, next, r, nx));
+                    }
+                }
+            }
+
+            // Topping out with the next piece is as bad as it gets, but still tells placements apart
+            final double here = next.evaluate(weights, lines);
+            return (best == Double.NEGATIVE_INFINITY) ? (here - 1e6) : (weights.linesCleared * lines + best);
+        }
+    }
+
+    /**
+     * Occupancy only copy of a well, rows in well order
+     */
+    static final class Board {
+        final int columns;
+
+        private final long fullRow;
+
+        private final int turn; // quarter turns of a ROTATE, as the engine's Rules.rotation()
+
+        private final long[] rows;
+
+        Board(int columns, long fullRow, int turn, final long[] rows) {
+            this.columns = columns;
+            this.fullRow = fullRow;
+            this.turn = turn;
+            this.rows = rows;
+        }
+
+        Board copy() { return new Board(columns, fullRow, turn, rows.clone()); }
+
+        Board copyFrom(final Board other) {
+            System.arraycopy(other.rows, 0, rows, 0, rows.length);
+
+            return this;
+        }
+
+        // Same rules as Well.collides()
+        boolean collides(int piece, int rotation, int x, int y) {
+            final int shape = shape(piece, rotation);
+            final int left = x + MIN_X[shape];
+            final int top = y + MIN_Y[shape];
+            final int height = HEIGHT[shape];
+
+            if (left < 0 || (left + WIDTH[shape]) > columns || (top + height) > rows.length) {
+                return true;
+            }
+
+            for (int r = Math.max(0, -top); r < height; r++) {
+                if (((ROW_MASKS[(shape << 2) + r] << left) & rows[top + r]) != 0) { return true; }
+            }
+
+            return false;
+        }
+
+        /**
+         * If the piece can get from (fromRotation, fromX, y) to (rotation, x) the way the engine moves it:
+         * rotating one ROTATE at a time where it is, then sliding one column at a time
+         */
+        boolean reachable(int piece, int fromRotation, int fromX, int y, int rotation, int x) {
+            if (collides(piece, fromRotation, fromX, y)) { return false; }
+
+            int r = fromRotation;
+            for (int turns = 0; r != rotation && turns < 4; turns++) {
+                r = rotation(r + turn);
+                if (collides(piece, r, fromX, y)) { return false; }
+            }
+            if (r != rotation) { return false; } // turning this way never gets there
+
+            final int step = (x > fromX) ? 1 : -1;
+            for (int cx = fromX; cx != x; ) {
+                cx += step;
+                if (collides(piece, rotation, cx, y)) { return false; }
+            }
+
+            return true;
+        }
+
+        /**
+         * Drops the piece from the top of column x, fixes it and clears full rows
+         *
+         * @return how many rows were cleared
+         */
+        int drop(int piece, int rotation, int x) {
+            int y = 0;
+            while (!collides(piece, rotation, x, y + 1)) { y++; }
+
+            final int shape = shape(piece, rotation);
+            for (int i = 0; i < 4; i++) {
+                final int sy = y + CELL_Y[(shape << 2) + i];
+                if (sy >= 0) { rows[sy] |= 1L << (x + CELL_X[(shape << 2) + i]); }
+            }
+
+            int cleared = 0, to = rows.length - 2;
+            for (int j = rows.length - 2; j >= 0; j--) {
+                if (j > 0 && rows[j] == fullRow) {
+                    cleared++;
+                } else {
+                    rows[to--] = rows[j];
+                }
+            }
+            while (to >= 0) { rows[to--] = 1L | (1L << (columns - 1)); }
+
+            return cleared;
+        }
+
+        double evaluate(final Weights weights, int lines) {
+            final int floor = rows.length - 1;
+
+            int aggregateHeight = 0, holes = 0, bumpiness = 0, previousHeight = -1;
+
+            for (int x = 1; x < (columns - 1); x++) {
+                final long bit = 1L << x;
+
+                int top = 0;
+                while (top < floor && (rows[top] & bit) == 0) { top++; }
+
+                final int height = floor - top;
+                aggregateHeight += height;
+
+                for (int y = top + 1; y < floor; y++) {
+                    if ((rows[y] & bit) == 0) { holes++; }
+                }
+
+                if (previousHeight >= 0) { bumpiness += Math.abs(height - previousHeight); }
+                previousHeight = height;
+            }
+
+            return (weights.aggregateHeight * aggregateHeight) + (weights.linesCleared * lines)
+                    + (weights.holes * holes) + (weights.bumpiness * bumpiness);
+        }
+    }
+}
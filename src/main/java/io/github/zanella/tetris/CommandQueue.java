@@ -0,0 +1,80 @@
+package io.github.zanella.tetris;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntConsumer;
+
+/**
+ * Bounded, lock-free queue of int commands for many producers and a single consumer.
+ *
+ * Each slot carries a sequence number telling whose turn it is: producers claim a slot with one CAS on
+ * the tail, and the consumer hands it back by bumping its sequence one lap ahead. A full queue refuses
+ * the command rather than blocking the producer.
+ */
+class CommandQueue {
+    private final int capacity, mask;
+
+    private final int[] commands;
+
+    private final AtomicLongArray sequences;
+
+    private final AtomicLong tail = new AtomicLong();
+
+    private long head = 0; // consumer only
+
+    CommandQueue(final int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of 2, got " + capacity);
+        }
+
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.commands = new int[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+
+        for (int i = 0; i < capacity; i++) { sequences.set(i, i); }
+    }
+
+    /**
+     * @return false, dropping the command, when the queue is full
+     */
+    boolean offer(int command) {
+        while (true) {
+            final long t = tail.get();
+            final int slot = (int) t & mask;
+            final long sequence = sequences.get(slot);
+
+            if (sequence == t) {
+                if (tail.compareAndSet(t, t + 1)) {
+                    commands[slot] = command;
+                    sequences.lazySet(slot, t + 1);
+
+                    return true;
+                }
+            } else if (sequence < t) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Consumer side: hands every queued command to the consumer, in order
+     *
+     * @return how many there were
+     */
+    int drain(final IntConsumer consumer) {
+        int drained = 0;
+
+        while (true) {
+            final int slot = (int) head & mask;
+            if (sequences.get(slot) != (head + 1)) { return drained; }
+
+            final int command = commands[slot];
+            sequences.lazySet(slot, head + capacity);
+            head += 1;
+            drained += 1;
+
+            consumer.accept(command);
+        }
+    }
+}
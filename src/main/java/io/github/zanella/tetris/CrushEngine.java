@@ -0,0 +1,651 @@
+package io.github.zanella.tetris;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static java.lang.Math.abs;
+import static io.github.zanella.tetris.Tetraminos.*;
+
+/**
+ * Game state of Tetris and TetrisCrush, with no Swing/AWT window behind it; what differs between the two
+ * games (colors, scoring, swaps) is in its {@link Rules}.
+ *
+ * Everything is driven through {@link #step(Input)}, {@link #select(int, int)} and {@link #tick()};
+ * a view that wants to know about changes registers a listener, which is called once per call.
+ */
+class CrushEngine {
+    enum Input { ROTATE, DROP, LEFT, RIGHT, HARD_DROP, PAUSE, RESET }
+
+    final int columns, rows;
+
+    final long seed; // of the pieces and their colors, the same seed and inputs play the same game
+
+    final PieceGenerator.Factory generator;
+
+    final Rules rules;
+
+    private final SplitMix random; // colors of the squares
+
+    private final PieceGenerator pieces;
+
+    private long dealt = 0; // pieces drawn so far
+
+    private final Well well;
+
+    static final int PREVIEW = 3; // upcoming pieces known in advance
+
+    private final Tetramino currentPiece = new Tetramino();
+
+    private final Tetramino[] upcoming = new Tetramino[PREVIEW];
+
+    private long score;
+
+    private int lines; // cleared so far, every 10 is a level
+
+    private boolean paused = false;
+
+    private boolean over = false; // The last piece didn't fit in the well
+
+    // Squares clicked so far for a swap, at most 2
+    private final int[] chosenX = new int[2], chosenY = new int[2];
+    private int chosenCount = 0;
+
+    private Runnable listener = () -> {};
+
+    // Squares matched but not cleared yet, a bit per column in each row, and the rows in use
+    private final long[] marked;
+    private int markedTop, markedBottom = -1;
+
+    // Columns with holes left by clearMarked(), and the lowest hole of each
+    private long holeColumns = 0;
+    private final int[] holeBottom;
+
+    // Squares that fell in the last collapse(), the only ones that can make new matches
+    private final long[] moved;
+    private int movedTop, movedBottom = -1;
+
+    private int lastCombo = 0; // cascade steps of the last successful swap
+
+    private final SwapHints hints;
+
+    private InputLog.Recorder recorder = null;
+
+    private Metrics metrics = null;
+
+    private EngineEvents events = EngineEvents.NONE;
+
+    CrushEngine(final int columns, final int rows, final long seed, final PieceGenerator.Factory generator, final Rules rules) {
+        this.columns = columns;
+        this.rows = rows;
+        this.seed = seed;
+        this.generator = generator;
+        this.rules = rules;
+        this.well = new Well(columns, rows);
+        this.marked = new long[rows];
+        this.markedTop = rows;
+        this.holeBottom = new int[columns];
+        this.moved = new long[rows];
+        this.movedTop = rows;
+        this.hints = new SwapHints(well);
+
+        this.random = new SplitMix(seed);
+        this.pieces = generator.create(random.split());
+
+        for (int i = 0; i < PREVIEW; i++) { upcoming[i] = deal(new Tetramino()); }
+
+        newPiece();
+    }
+
+    CrushEngine(final int columns, final int rows, final long seed, final PieceGenerator.Factory generator) {
+        this(columns, rows, seed, generator, Rules.CRUSH);
+    }
+
+    CrushEngine(final int columns, final int rows, final long seed) { this(columns, rows, seed, PieceGenerator.RANDOM); }
+
+    CrushEngine(final int columns, final int rows) { this(columns, rows, ThreadLocalRandom.current().nextLong()); }
+
+    void setListener(final Runnable listener) { this.listener = listener; }
+
+    /**
+     * Logs every input and tick from now on, null to stop; set it before the first input to be able to replay the game
+     */
+    void setRecorder(final InputLog.Recorder recorder) { this.recorder = recorder; }
+
+    void setEvents(final EngineEvents events) { this.events = (events == null) ? EngineEvents.NONE : events; }
+
+    // Counts pieces, lines and matches there, null to stop
+    void setMetrics(final Metrics metrics) { this.metrics = metrics; }
+
+    Well well() { return well; }
+
+    Tetramino currentPiece() { return currentPiece; }
+
+    // The i-th piece after the current one, i < PREVIEW
+    Tetramino upcoming(int i) { return upcoming[i]; }
+
+    long score() { return score; }
+
+    int level() { return lines / 10; }
+
+    int lines() { return lines; }
+
+    long dealt() { return dealt; }
+
+    // Where the current piece would land, for the ghost preview
+    int ghostY() { return well.dropY(currentPiece.piece, currentPiece.rotation, currentPiece.x, currentPiece.y); }
+
+    int lastCombo() { return lastCombo; }
+
+    /**
+     * Every swap that would match right now
+     */
+    SwapHints hints() {
+        hints.refresh();
+
+        return hints;
+    }
+
+    boolean isPaused() { return paused; }
+
+    boolean isOver() { return over; }
+
+    int chosenCount() { return chosenCount; }
+
+    int chosenX(int i) { return chosenX[i]; }
+
+    int chosenY(int i) { return chosenY[i]; }
+
+    /**
+     * Applies one player input; while paused only {@link Input#PAUSE} goes through,
+     * once the game is over only {@link Input#RESET}
+     */
+    void step(final Input input) {
+        if (recorder != null) { recorder.input(input); }
+
+        if (paused && (input != Input.PAUSE)) { return; }
+        if (over && (input != Input.RESET)) { return; }
+
+        switch (input) {
+            case ROTATE:    rotate(rules.rotation());                       break;
+            case DROP:      score += rules.softDropPoints(); dropDown();    break; // scored before it may settle
+            case LEFT:      movePiece(-1);                                  break;
+            case RIGHT:     movePiece(+1);                                  break;
+            case HARD_DROP: dropInstant();                                  break;
+            case PAUSE:     paused = !paused;                               break;
+            case RESET:     reset();                                        break;
+        }
+
+        listener.run();
+    }
+
+    /**
+     * Gravity: drops the piece one line, unless paused
+     */
+    void tick() {
+        if (recorder != null) { recorder.tick(); }
+
+        if (paused || over) { return; }
+
+        dropDown();
+
+        listener.run();
+    }
+
+    /**
+     * Garbage from an opponent: the well rises these many rows, gray but for a hole in the given column.
+     * The piece goes up with it if it has to; squares pushed out the top end the game.
+     */
+    void addGarbage(int rows, int hole) {
+        if (recorder != null) { recorder.garbage(rows, hole); }
+
+        if (over) { return; }
+
+        if (rows > 0) { events.rowsChanged(0, this.rows - 2); }
+
+        if (well.raise(rows, hole, Well.BORDER)) {
+            while (collidesAt(currentPiece.x, currentPiece.y)) { currentPiece.y--; } // nothing collides above the top
+        } else {
+            over = true;
+            events.toppedOut();
+        }
+
+        listener.run();
+    }
+
+    void reset() {
+        score = 0;
+        lines = 0;
+        well.reset();
+        events.rowsChanged(0, rows - 1);
+
+        if (over) {
+            over = false;
+            newPiece();
+        }
+
+        events.restarted();
+    }
+
+    private static final int FIXED_BYTES = 26 + (Tetramino.BYTES * (1 + PREVIEW)) + Long.BYTES + SplitMix.BYTES;
+
+    // Bytes save() takes, saveState() the well's less
+    int stateSize() { return FIXED_BYTES + pieces.stateSize() + Well.packedSize(columns, rows); }
+
+    /**
+     * Writes everything that makes the game what it is, random streams included, except the size and the seed,
+     * which {@link Snapshot} keeps in its header
+     */
+    void save(final ByteBuffer out) {
+        saveState(out);
+        well.pack(out);
+    }
+
+    // All of save() but the well
+    void saveState(final ByteBuffer out) {
+        out.putLong(score).putInt(lines).putInt(lastCombo);
+        out.put((byte) ((paused ? 1 : 0) | (over ? 2 : 0))).put((byte) chosenCount);
+        for (int i = 0; i < 2; i++) { out.putShort((short) chosenX[i]).putShort((short) chosenY[i]); }
+
+        currentPiece.write(out);
+        for (final Tetramino next : upcoming) { next.write(out); }
+
+        out.putLong(dealt);
+        random.save(out);
+        pieces.save(out);
+    }
+
+    /**
+     * Reads back what {@link #save(ByteBuffer)} wrote, from a game with this same size and generator;
+     * the random streams pick up where they were, nothing is dealt again
+     */
+    void restore(final ByteBuffer in) {
+        restoreState(in);
+        well.unpack(in);
+        events.rowsChanged(0, rows - 1);
+
+        listener.run();
+    }
+
+    /**
+     * Back to another point of a game of this same size and generator, see {@link Timeline}: what
+     * {@link #saveState(ByteBuffer)} wrote then, random streams included, and the squares of every row
+     */
+    void rewind(final ByteBuffer state, final byte[][] squares) {
+        restoreState(state);
+        well.setRows(squares);
+        events.rowsChanged(0, rows - 1);
+
+        listener.run();
+    }
+
+    private void restoreState(final ByteBuffer in) {
+        score = in.getLong();
+        lines = in.getInt();
+        lastCombo = in.getInt();
+
+        final int flags = in.get();
+        paused = (flags & 1) != 0;
+        over = (flags & 2) != 0;
+
+        chosenCount = in.get();
+        if (chosenCount < 0 || chosenCount > 1) { throw new IllegalArgumentException("Chosen " + chosenCount + " squares"); }
+        for (int i = 0; i < 2; i++) {
+            chosenX[i] = in.getShort();
+            chosenY[i] = in.getShort();
+        }
+
+        currentPiece.read(in);
+        for (final Tetramino next : upcoming) { next.read(in); }
+
+        dealt = in.getLong();
+        random.restore(in);
+        pieces.restore(in);
+    }
+
+    private void newPiece() { // Puts the next piece into the dropping position, and a new random one in line
+        final Tetramino next = upcoming[0];
+        currentPiece.copyFrom(next);
+
+        System.arraycopy(upcoming, 1, upcoming, 0, PREVIEW - 1);
+        upcoming[PREVIEW - 1] = deal(next);
+
+        over = collidesAt(currentPiece.x, currentPiece.y);
+
+        if (over) { events.toppedOut(); }
+    }
+
+    private Tetramino deal(final Tetramino into) {
+        dealt += 1;
+
+        final int piece = pieces.next();
+
+        return into.spawn(piece, rules.colors(piece, random));
+    }
+
+    private boolean collidesAt(int x, int y) { // Collision test for the dropping piece
+        return well.collides(currentPiece.piece, currentPiece.rotation, x, y);
+    }
+
+    private void rotate(int i) { // Rotates the piece clockwise or counterclockwise
+        final int prevRotation = currentPiece.rotation;
+        currentPiece.rotation = rotation(currentPiece.rotation + i);
+
+        if (collidesAt(currentPiece.x, currentPiece.y)) {
+            currentPiece.rotation = prevRotation;
+        }
+    }
+
+    private void movePiece(int i) { // Moves the piece horizontally
+        if (!collidesAt(currentPiece.x + i, currentPiece.y)) {
+            currentPiece.x += i;
+        }
+    }
+
+    private boolean dropDown() { // Drops the piece one line or fixes it to the well if it can't drop
+        final boolean collisionCheck = collidesAt(currentPiece.x, currentPiece.y + 1);
+
+        if (!collisionCheck) {
+            currentPiece.y += 1;
+        } else {
+            fixToWell();
+        }
+
+        return collisionCheck;
+    }
+
+    private void dropInstant() { // Straight to where it lands, a point per row
+        final int landing = ghostY();
+
+        score += rules.hardDropPoints(landing - currentPiece.y);
+        currentPiece.y = landing;
+
+        fixToWell();
+    }
+
+    /**
+     * Make the dropping piece part of the well, so it is available for collision detection.
+     */
+    private void fixToWell() {
+        final Tetramino cp = currentPiece;
+
+        int top = rows, bottom = -1;
+        for (int i = 0; i < 4; i++) {
+            final int y = cp.squareY(i);
+
+            if (y >= 0) {
+                well.set(cp.squareX(i), y, cp.color(i));
+                top = Math.min(top, y);
+                bottom = Math.max(bottom, y);
+            }
+        }
+        if (bottom >= 0) { events.rowsChanged(top, bottom); }
+
+        if (metrics != null) { metrics.piecePlaced(); }
+
+        events.placed(cp);
+
+        clearRows();
+
+        newPiece();
+
+        events.settled();
+    }
+
+    // Clear completed rows from the field and award score according to
+    // the number of simultaneously cleared rows.
+    private void clearRows() {
+        final int numClears = well.clearRows();
+        lines += numClears;
+
+        if (metrics != null) { metrics.linesCleared(numClears); }
+
+        if (numClears > 0) {
+            events.rowsCleared(numClears);
+            events.rowsChanged(0, rows - 2); // everything above the lowest one moved
+
+            score += rules.clearPoints(numClears, level());
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+
+    // Forgets a square chosen for a swap that hasn't happened yet
+    void deselect() {
+        if (chosenCount == 0) { return; }
+
+        if (recorder != null) { recorder.deselect(); }
+
+        chosenCount = 0;
+        listener.run();
+    }
+
+    /**
+     * Chooses the square at (column, row); the second adjacent choice swaps both squares,
+     * which sticks only if it makes a match
+     */
+    void select(int column, int row) {
+        if (!rules.swaps()) { return; }
+        if (column < 0 || column >= columns || row < 0 || row >= rows) { return; }
+
+        if (recorder != null) { recorder.select(column, row); }
+
+        final byte pc = well.get(column, row);
+        if (Debug.ENABLED) { Debug.log("column: " + column + ", row: " + row + " color: " + Well.PALETTE[pc]); }
+        if (pc == Well.EMPTY || pc == Well.BORDER) { return; }
+
+        chosenX[chosenCount] = column;
+        chosenY[chosenCount] = row;
+        chosenCount += 1;
+
+        if (chosenCount == 2) {
+            chosenCount = 0;
+
+            final int ax = chosenX[0], ay = chosenY[0], bx = chosenX[1], by = chosenY[1];
+
+            final int horizontalAndVerticalDist = abs(ax - bx) + abs(ay - by);
+            if (horizontalAndVerticalDist == 1) {
+                final byte aColor = well.get(ax, ay);
+                final byte bColor = well.get(bx, by);
+
+                well.set(ax, ay, bColor);
+                well.set(bx, by, aColor);
+
+                // Both squares may complete a stretch, so both are checked before anything is cleared
+                if ((markMatches(ax, ay, bColor) + markMatches(bx, by, aColor)) == 0) {
+                    well.set(ax, ay, aColor);
+                    well.set(bx, by, bColor);
+                } else {
+                    events.rowsChanged(Math.min(ay, by), Math.max(ay, by));
+                    lastCombo = cascade();
+                    clearRows();
+
+                    events.settled();
+                }
+            }
+        }
+
+        listener.run();
+    }
+
+    /**
+     * Blanks the horizontal and vertical stretches of 3+ squares of this color through (bx, by)
+     *
+     * @return if anything was cleared
+     */
+    boolean clearMatches(int bx, int by, byte color) {
+        final boolean cleared = (markMatches(bx, by, color) > 0) && (clearMarked() > 0);
+
+        holeColumns = 0; // nothing falls
+
+        return cleared;
+    }
+
+    /**
+     * Clears the marked squares, lets the squares above them fall and clears whatever matches that makes,
+     * until nothing moves; only the columns with holes fall and only the squares that fell are re-checked.
+     *
+     * Each square is worth 10 points, times the step of the cascade it was cleared in.
+     *
+     * @return how many steps it took, 1 when nothing fell into a new match
+     */
+    int cascade() {
+        int combo = 1;
+        int squares = clearMarked();
+        score += rules.matchPoints(squares, combo);
+
+        while (collapse() && (markMoved() > 0)) {
+            combo += 1;
+
+            final int cleared = clearMarked();
+            squares += cleared;
+            score += rules.matchPoints(cleared, combo);
+        }
+
+        if (metrics != null) { metrics.matched(squares); }
+
+        return combo;
+    }
+
+    /**
+     * Drops the squares above the holes of every column that has them
+     *
+     * @return if any square moved
+     */
+    private boolean collapse() {
+        boolean anyMoved = false;
+        int bottom = -1;
+
+        long columnsLeft = holeColumns;
+        holeColumns = 0;
+
+        while (columnsLeft != 0) {
+            final int x = Long.numberOfTrailingZeros(columnsLeft);
+            columnsLeft &= columnsLeft - 1;
+
+            int to = holeBottom[x];
+            for (int from = to; from >= 0; from--) {
+                final byte color = well.get(x, from);
+                if (color == Well.EMPTY) { continue; }
+
+                if (from != to) {
+                    well.set(x, to, color);
+                    well.set(x, from, Well.EMPTY);
+
+                    moved[to] |= 1L << x;
+                    movedTop = Math.min(movedTop, to);
+                    movedBottom = Math.max(movedBottom, to);
+                    bottom = Math.max(bottom, to);
+                    anyMoved = true;
+                }
+
+                to -= 1;
+            }
+        }
+
+        if (anyMoved) { events.rowsChanged(0, bottom); }
+
+        return anyMoved;
+    }
+
+    /**
+     * Marks the matches going through the squares that fell, and forgets them
+     *
+     * @return 0 if there were none
+     */
+    private int markMoved() {
+        int found = 0;
+
+        for (int y = movedTop; y <= movedBottom; y++) {
+            long squares = moved[y];
+            moved[y] = 0;
+
+            while (squares != 0) {
+                final int x = Long.numberOfTrailingZeros(squares);
+                squares &= squares - 1;
+
+                found += markMatches(x, y, well.get(x, y));
+            }
+        }
+
+        movedTop = rows;
+        movedBottom = -1;
+
+        return found;
+    }
+
+    /**
+     * Marks, for {@link #clearMarked()}, the horizontal and vertical stretches of 3+ squares
+     * of this color through (bx, by); only counts run lengths, nothing is allocated
+     *
+     * @return how many squares its stretches have, 0 when there is no match
+     */
+    int markMatches(int bx, int by, byte color) {
+        int left = 0, right = 0, up = 0, down = 0; // run lengths on each side of (bx, by)
+
+        { // ROW
+            while ((bx + right + 1) < columns && well.get(bx + right + 1, by) == color) { right++; }
+            while ((bx - left - 1) > 0 && well.get(bx - left - 1, by) == color) { left++; }
+        }
+
+        { // COLUMN
+            while ((by + down + 1) < rows && well.get(bx, by + down + 1) == color) { down++; }
+            while ((by - up - 1) > 0 && well.get(bx, by - up - 1) == color) { up++; }
+        }
+
+        if (Debug.ENABLED) {
+            Debug.log("xStretch: [" + (bx - left) + ".." + (bx + right) + "] @ " + by
+                    + ", yStretch: [" + (by - up) + ".." + (by + down) + "] @ " + bx);
+        }
+
+        int count = 0;
+
+        if ((left + 1 + right) >= 3) {
+            marked[by] |= ((1L << (left + 1 + right)) - 1) << (bx - left);
+            count += left + 1 + right;
+        }
+
+        if ((up + 1 + down) >= 3) {
+            for (int y = by - up; y <= by + down; y++) { marked[y] |= 1L << bx; }
+            count += (count > 0) ? (up + down) : (up + 1 + down); // (bx, by) only once
+        }
+
+        if (count > 0) {
+            markedTop = Math.min(markedTop, by - up);
+            markedBottom = Math.max(markedBottom, by + down);
+        }
+
+        return count;
+    }
+
+    /**
+     * Blanks every marked square, noting the holes for {@link #collapse()}, and forgets the marks
+     *
+     * @return how many squares were blanked
+     */
+    int clearMarked() {
+        int cleared = 0;
+
+        for (int y = markedTop; y <= markedBottom; y++) {
+            long squares = marked[y];
+            marked[y] = 0;
+
+            while (squares != 0) {
+                final int x = Long.numberOfTrailingZeros(squares);
+                squares &= squares - 1;
+
+                well.set(x, y, Well.EMPTY);
+                cleared += 1;
+
+                if ((holeColumns & (1L << x)) == 0 || holeBottom[x] < y) { holeBottom[x] = y; }
+                holeColumns |= 1L << x;
+            }
+        }
+
+        if (cleared > 0) { events.rowsChanged(markedTop, markedBottom); }
+
+        markedTop = rows;
+        markedBottom = -1;
+
+        return cleared;
+    }
+}
@@ -0,0 +1,16 @@
+package io.github.zanella.tetris;
+
+/**
+ * Opt-in console tracing, turned on with -Dtetris.debug=true.
+ *
+ * Check {@link #ENABLED} before building the message, so that hot paths cost nothing when it's off.
+ */
+final class Debug {
+    static final boolean ENABLED = Boolean.getBoolean("tetris.debug");
+
+    private Debug() {}
+
+    static void log(final String message) {
+        if (ENABLED) { System.out.println(message); }
+    }
+}
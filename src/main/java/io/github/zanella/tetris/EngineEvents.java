@@ -0,0 +1,52 @@
+package io.github.zanella.tetris;
+
+import static io.github.zanella.tetris.Tetraminos.*;
+
+/**
+ * What happened in a CrushEngine, told on the thread that drives it as it happens;
+ * implement the ones of interest, the rest do nothing
+ */
+interface EngineEvents {
+    EngineEvents NONE = new EngineEvents() {};
+
+    // Tells all of them, in order
+    static EngineEvents of(final EngineEvents... all) {
+        return new EngineEvents() {
+            @Override
+            public void placed(final Tetramino piece) { for (final EngineEvents e : all) { e.placed(piece); } }
+
+            @Override
+            public void rowsCleared(int rows) { for (final EngineEvents e : all) { e.rowsCleared(rows); } }
+
+            @Override
+            public void toppedOut() { for (final EngineEvents e : all) { e.toppedOut(); } }
+
+            @Override
+            public void settled() { for (final EngineEvents e : all) { e.settled(); } }
+
+            @Override
+            public void restarted() { for (final EngineEvents e : all) { e.restarted(); } }
+
+            @Override
+            public void rowsChanged(int top, int bottom) { for (final EngineEvents e : all) { e.rowsChanged(top, bottom); } }
+        };
+    }
+
+    // The piece became part of the well where it is now, before any row is cleared
+    default void placed(final Tetramino piece) {}
+
+    // Full rows that were just cleared
+    default void rowsCleared(int rows) {}
+
+    // The new piece didn't fit
+    default void toppedOut() {}
+
+    // A placement or a swap is over: its rows cleared, its cascade done and, after a placement, the next piece in
+    default void settled() {}
+
+    // A RESET: score and well start over, nothing before it belongs to this game anymore
+    default void restarted() {}
+
+    // Squares of the well changed somewhere between these rows, both included
+    default void rowsChanged(int top, int bottom) {}
+}
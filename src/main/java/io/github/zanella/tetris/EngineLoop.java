@@ -0,0 +1,149 @@
+package io.github.zanella.tetris;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Single writer for a CrushEngine: keys, clicks and gravity are all queued as commands and applied
+ * by the clock thread, which publishes a new {@link Frame} after every batch of changes.
+ *
+ * Other threads only ever enqueue commands or read the latest frame, so nothing needs a lock.
+ */
+class EngineLoop {
+    // Command kinds of a click, of garbage and of a take back, the others are Input ordinals
+    private static final int SELECT = 0xFF, GARBAGE = 0xFE, UNDO = 0xFD;
+
+    private static final CrushEngine.Input[] INPUTS = CrushEngine.Input.values();
+
+    private final CrushEngine engine;
+
+    private final CommandQueue commands;
+
+    private final GameClock clock;
+
+    private boolean changed = false; // owner thread only
+
+    private long version = 0;
+
+    // When the oldest input not applied yet was sent, 0 if none; and of the ones applied for the next frame
+    private final AtomicLong inputSent = new AtomicLong();
+    private long inputNanos = 0; // owner thread only
+
+    private volatile Frame frame;
+
+    private volatile Consumer<Frame> listener = f -> {};
+
+    private Timeline timeline = null; // what UNDO goes back on, owner thread
+
+    EngineLoop(final CrushEngine engine, final int ticksPerSecond, final GameClock.Gravity gravity) {
+        this.engine = engine;
+        this.commands = new CommandQueue(256);
+        this.clock = new GameClock(ticksPerSecond, gravity, engine::level, engine::tick)
+                .setInputs(this::drain)
+                .setAfterTick(this::publishIfChanged);
+
+        engine.setListener(() -> changed = true);
+
+        this.frame = Frame.of(engine, version, 0);
+    }
+
+    GameClock clock() { return clock; }
+
+    Frame frame() { return frame; }
+
+    /**
+     * Called on the owner thread with every new frame
+     */
+    void setListener(final Consumer<Frame> listener) { this.listener = listener; }
+
+    /**
+     * Lets {@link #undo()} go back on this timeline, which must be among the engine's events; before start()
+     */
+    void setTimeline(final Timeline timeline) { this.timeline = timeline; }
+
+    void start() { clock.start(); }
+
+    void stop() { clock.stop(); }
+
+    /**
+     * @return false if the input was dropped because too many are already waiting
+     */
+    boolean input(final CrushEngine.Input input) { return offer(command(input)); }
+
+    boolean select(int column, int row) { return selectable(column, row) && offer(selectCommand(column, row)); }
+
+    /**
+     * @return false if the garbage was dropped, see {@link #input(CrushEngine.Input)}
+     */
+    boolean garbage(int rows, int hole) {
+        if (rows < 0 || rows > 0xFFF || hole < 0 || hole > 0xFFF) { return false; }
+
+        return offer((GARBAGE << 24) | (rows << 12) | hole);
+    }
+
+    /**
+     * Takes back the last placement or swap, if there's a timeline
+     */
+    boolean undo() { return offer(UNDO << 24); }
+
+    // How inputs travel through a CommandQueue: the Input ordinal, or SELECT, in the top byte
+    static int command(final CrushEngine.Input input) { return input.ordinal() << 24; }
+
+    // If the square fits in a command, 12 bits a coordinate
+    static boolean selectable(int column, int row) { return column >= 0 && column <= 0xFFF && row >= 0 && row <= 0xFFF; }
+
+    // Negative, as SELECT fills the top byte; only for squares that are selectable()
+    static int selectCommand(int column, int row) { return (SELECT << 24) | (column << 12) | row; }
+
+    static void apply(final CrushEngine engine, int command) {
+        final int kind = command >>> 24;
+
+        if (kind == SELECT) {
+            engine.select((command >>> 12) & 0xFFF, command & 0xFFF);
+        } else if (kind == GARBAGE) {
+            engine.addGarbage((command >>> 12) & 0xFFF, command & 0xFFF);
+        } else {
+            engine.step(INPUTS[kind]);
+        }
+    }
+
+    private boolean offer(int command) {
+        inputSent.compareAndSet(0, System.nanoTime());
+
+        final boolean accepted = commands.offer(command);
+
+        clock.wake();
+
+        return accepted;
+    }
+
+    private void apply(int command) {
+        if ((command >>> 24) == UNDO) {
+            if (timeline != null) { timeline.undo(); }
+        } else {
+            apply(engine, command);
+        }
+    }
+
+    private void drain() {
+        final long sent = inputSent.getAndSet(0);
+
+        if (commands.drain(this::apply) > 0) {
+            inputNanos = sent;
+            publishIfChanged();
+            inputNanos = 0;
+        }
+    }
+
+    private void publishIfChanged() {
+        if (!changed) { return; }
+
+        changed = false;
+        version += 1;
+
+        final Frame f = Frame.of(engine, version, inputNanos);
+        frame = f;
+
+        listener.accept(f);
+    }
+}
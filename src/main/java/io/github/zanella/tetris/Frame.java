@@ -0,0 +1,63 @@
+package io.github.zanella.tetris;
+
+import static io.github.zanella.tetris.Tetraminos.*;
+
+/**
+ * Immutable picture of a CrushEngine, published by its owner thread for everybody else to read.
+ *
+ * The well is a private copy whose dirty squares are the ones changed since the previous frame.
+ */
+final class Frame {
+    final long version;
+
+    final Well well;
+
+    final Tetramino piece;
+
+    final int ghostY; // where the piece would land
+
+    final long score;
+
+    final boolean paused, over;
+
+    final int[] chosenX, chosenY; // squares chosen for a swap
+
+    final int hint; // a swap that would match, see SwapHints, -1 if there's none
+
+    final long inputNanos; // System.nanoTime() when the first input this frame shows was sent, 0 if none
+
+    private Frame(final CrushEngine engine, final long version, long inputNanos) {
+        this.version = version;
+        this.inputNanos = inputNanos;
+
+        this.well = new Well(engine.columns, engine.rows);
+        this.well.copyFrom(engine.well());
+
+        this.piece = new Tetramino().copyFrom(engine.currentPiece());
+        this.ghostY = engine.ghostY();
+
+        this.score = engine.score();
+        this.paused = engine.isPaused();
+        this.over = engine.isOver();
+
+        this.chosenX = new int[engine.chosenCount()];
+        this.chosenY = new int[engine.chosenCount()];
+        for (int i = 0; i < chosenX.length; i++) {
+            chosenX[i] = engine.chosenX(i);
+            chosenY[i] = engine.chosenY(i);
+        }
+
+        this.hint = engine.hints().any();
+    }
+
+    /**
+     * Takes the picture and starts tracking the changes for the next one
+     */
+    static Frame of(final CrushEngine engine, final long version, long inputNanos) {
+        final Frame frame = new Frame(engine, version, inputNanos);
+
+        engine.well().clearDirty();
+
+        return frame;
+    }
+}
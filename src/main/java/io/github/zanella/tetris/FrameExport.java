@@ -0,0 +1,166 @@
+package io.github.zanella.tetris;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Renders a recorded game, headlessly, as numbered PNGs: frame-000000.png, frame-000001.png... one every
+ * so many gravity ticks, painted by the same {@link FramePainter} as the window.
+ *
+ * The frames are cut into ranges rendered in parallel, each by its own Replay and painter, so within a range
+ * only the squares that changed get drawn. Images come from a fixed pool and go back to it once encoded and
+ * written; renderers that get ahead of the disk wait for one, so memory stays flat however long the game.
+ */
+final class FrameExport {
+    static final int SIDE = 25; // pixels per square, as in the window
+
+    private static final int RANGES_PER_THREAD = 4;
+
+    private final ByteBuffer log;
+
+    private final Path dir;
+
+    private final int every, threads;
+
+    /**
+     * @param every ticks between frames
+     */
+    FrameExport(final ByteBuffer log, final Path dir, int every, int threads) {
+        if (every <= 0) { throw new IllegalArgumentException("Ticks between frames must be positive, got " + every); }
+        if (threads <= 0) { throw new IllegalArgumentException("Threads must be positive, got " + threads); }
+
+        this.log = log;
+        this.dir = dir;
+        this.every = every;
+        this.threads = threads;
+    }
+
+    /**
+     * @return how many frames were written
+     */
+    int run() throws IOException, InterruptedException {
+        final Replay whole = new Replay(log);
+        whole.playToEnd();
+
+        final int frames = (int) (whole.tick() / every) + 1;
+        final int ranges = Math.min(frames, threads * RANGES_PER_THREAD);
+        final int perRange = (frames + ranges - 1) / ranges;
+
+        Files.createDirectories(dir);
+        ImageIO.setUseCache(false); // straight to the file
+
+        final BlockingQueue<BufferedImage> images = new ArrayBlockingQueue<>(2 * threads);
+        for (int i = 0; i < (2 * threads); i++) {
+            images.add(new BufferedImage(whole.columns * SIDE, whole.rows * SIDE, BufferedImage.TYPE_INT_RGB));
+        }
+
+        final ExecutorService renderers = Executors.newFixedThreadPool(threads, daemon("export-render-"));
+        final ExecutorService encoders = Executors.newFixedThreadPool(threads, daemon("export-encode-"));
+        final AtomicReference<IOException> failure = new AtomicReference<>();
+
+        try {
+            final List<Future<?>> rendered = new ArrayList<>();
+            for (int from = 0; from < frames; from += perRange) {
+                final int first = from, last = Math.min(frames, from + perRange);
+
+                rendered.add(renderers.submit(() -> {
+                    render(first, last, images, encoders, failure);
+                    return null;
+                }));
+            }
+
+            for (final Future<?> f : rendered) { f.get(); }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Rendering failed", e.getCause());
+        } finally {
+            renderers.shutdownNow();
+            encoders.shutdown();
+            encoders.awaitTermination(1, TimeUnit.MINUTES);
+        }
+
+        if (failure.get() != null) { throw failure.get(); }
+
+        return frames;
+    }
+
+    private void render(int first, int last, final BlockingQueue<BufferedImage> images, final ExecutorService encoders,
+                        final AtomicReference<IOException> failure) throws InterruptedException {
+        final Replay replay = new Replay(log);
+        final FramePainter painter = new FramePainter(replay.columns, replay.rows, SIDE);
+
+        for (int n = first; n < last && failure.get() == null; n++) {
+            replay.seek((long) n * every);
+
+            final Frame frame = Frame.of(replay.engine(), n, 0);
+            final BufferedImage image = images.take();
+
+            final Graphics2D g = image.createGraphics();
+            try {
+                painter.paint(g, frame, false);
+            } finally {
+                g.dispose();
+            }
+
+            final Path file = dir.resolve(String.format("frame-%06d.png", n));
+            encoders.execute(() -> {
+                try {
+                    if (!ImageIO.write(image, "png", file.toFile())) { throw new IOException("No PNG writer"); }
+                } catch (IOException e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    images.add(image);
+                }
+            });
+        }
+    }
+
+    private static ThreadFactory daemon(final String name) {
+        final AtomicInteger count = new AtomicInteger();
+
+        return r -> {
+            final Thread t = new Thread(r, name + count.incrementAndGet());
+            t.setDaemon(true);
+
+            return t;
+        };
+    }
+
+    /**
+     * Exports a game logged with -Dtetris.record: log, directory, ticks between frames (1), threads (every core)
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        System.setProperty("java.awt.headless", "true");
+
+        if (args.length < 2) {
+            System.err.println("Usage: FrameExport game.log directory [ticks between frames] [threads]");
+            System.exit(1);
+        }
+
+        final int every = (args.length > 2) ? Integer.parseInt(args[2]) : 1;
+        final int threads = (args.length > 3) ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+        final long start = System.nanoTime();
+        final int frames = new FrameExport(Replay.map(Paths.get(args[0])), Paths.get(args[1]), every, threads).run();
+
+        System.out.println(frames + " frames in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+    }
+}
@@ -0,0 +1,84 @@
+package io.github.zanella.tetris;
+
+import java.awt.*;
+
+import static io.github.zanella.tetris.Tetraminos.*;
+
+/**
+ * Paints a {@link Frame}: the well from its cached image, the score, the falling piece over
+ * the outline of where it lands, the squares chosen for a swap and, if asked, the hint.
+ *
+ * Both windows and {@link FrameExport} paint with it, so exported frames look just like the game.
+ */
+class FramePainter {
+    final WellPainter well;
+
+    /**
+     * @param raised see {@link WellPainter}
+     */
+    FramePainter(int columns, int rows, int pitch, int side, boolean raised) {
+        this.well = new WellPainter(columns, rows, pitch, side, raised);
+    }
+
+    // As TetrisCrush looks, raised squares with no gaps
+    FramePainter(int columns, int rows, int side) { this(columns, rows, side, side, true); }
+
+    /**
+     * @return pixel area of the well that had to be redrawn in its image, null if none
+     */
+    Rectangle paint(final Graphics g, final Frame frame, boolean hint) {
+        final Rectangle redrawn = well.update(frame.well);
+        g.drawImage(well.image(), 0, 0, null);
+
+        { // Display the score
+            g.setColor(Color.WHITE);
+            g.drawString("SCORE: " + frame.score, 19 * 12, 25);
+        }
+
+        { // Draw the currently falling piece
+            drawPiece(g, frame);
+        }
+
+        drawHighlighted(g, frame);
+
+        if (hint) { drawHint(g, frame); }
+
+        return redrawn;
+    }
+
+    private void drawPiece(Graphics g, final Frame frame) { // Draw the falling piece, and its outline where it would land
+        final Tetramino currentPiece = frame.piece;
+        for (int i = 0; i < 4; i++) {
+            well.paintOutline(g, currentPiece.color(i),
+                    currentPiece.squareX(i), currentPiece.squareY(i) - currentPiece.y + frame.ghostY);
+        }
+        for (int i = 0; i < 4; i++) {
+            well.paintSquare(g, currentPiece.color(i),
+                    currentPiece.squareX(i), currentPiece.squareY(i));
+        }
+    }
+
+    private void drawHighlighted(final Graphics g, final Frame frame) {
+        for (int i = 0; i < frame.chosenX.length; i++) {
+            final int x = frame.chosenX[i], y = frame.chosenY[i];
+
+            well.paintOutline(g, frame.well.get(x, y), x, y);
+
+            if (Debug.ENABLED) { Debug.log("Color highlighted: " + frame.well.color(x, y)); }
+
+            g.setColor(Color.WHITE);
+            g.drawString(Integer.toString(i + 1),
+                    (well.pitch * x) + 12, (well.pitch * y) + 12);
+        }
+    }
+
+    private void drawHint(final Graphics g, final Frame frame) {
+        if (frame.hint < 0) { return; }
+
+        final int ax = SwapHints.x(frame.hint), ay = SwapHints.y(frame.hint);
+        final int bx = SwapHints.otherX(frame.hint), by = SwapHints.otherY(frame.hint);
+
+        well.paintOutline(g, frame.well.get(ax, ay), ax, ay);
+        well.paintOutline(g, frame.well.get(bx, by), bx, by);
+    }
+}
@@ -0,0 +1,167 @@
+package io.github.zanella.tetris;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntSupplier;
+import java.util.function.LongConsumer;
+
+/**
+ * Fixed-timestep game loop: ticks at a steady rate and drops the piece every
+ * {@link Gravity#ticksPerDrop(int)} ticks for the current level.
+ *
+ * Deadlines are absolute (start + n * period), so sleeping late doesn't make the ticks drift;
+ * if it falls too far behind it starts over from now instead of bursting ticks to catch up.
+ * Without real time it just runs the ticks back to back, for simulations.
+ *
+ * Inputs queued for the game are applied on the clock thread, before every tick and whenever
+ * {@link #wake()} interrupts the wait, so the clock thread can be the only one changing the game.
+ */
+class GameClock {
+    interface Gravity {
+        int ticksPerDrop(int level);
+
+        // NES frames per row, at 60 ticks a second
+        int[] CLASSIC_TABLE = { 48, 43, 38, 33, 28, 23, 18, 13, 8, 6, 5, 5, 5, 4, 4, 4, 3, 3, 3, 2 };
+
+        Gravity CLASSIC = level -> (level < CLASSIC_TABLE.length) ? CLASSIC_TABLE[Math.max(0, level)] : 1;
+
+        static Gravity constant(final int ticksPerDrop) { return level -> ticksPerDrop; }
+    }
+
+    private static final int MAX_LAG_TICKS = 10;
+
+    final int ticksPerSecond;
+
+    private final long periodNanos;
+
+    private final Gravity gravity;
+
+    private final IntSupplier level;
+
+    private final Runnable drop;
+
+    private Runnable inputs = () -> {}, afterTick = () -> {};
+
+    private LongConsumer lateness = nanos -> {};
+
+    private volatile boolean realTime = true;
+
+    private volatile boolean running = false;
+
+    private long ticks = 0, ticksSinceDrop = 0;
+
+    private volatile Thread thread;
+
+    GameClock(final int ticksPerSecond, final Gravity gravity, final IntSupplier level, final Runnable drop) {
+        if (ticksPerSecond <= 0) {
+            throw new IllegalArgumentException("Ticks per second must be positive, got " + ticksPerSecond);
+        }
+
+        this.ticksPerSecond = ticksPerSecond;
+        this.periodNanos = TimeUnit.SECONDS.toNanos(1) / ticksPerSecond;
+        this.gravity = gravity;
+        this.level = level;
+        this.drop = drop;
+    }
+
+    long ticks() { return ticks; }
+
+    /**
+     * @param realTime false runs the ticks as fast as possible
+     */
+    GameClock setRealTime(boolean realTime) {
+        this.realTime = realTime;
+
+        return this;
+    }
+
+    GameClock setInputs(final Runnable inputs) {
+        this.inputs = inputs;
+
+        return this;
+    }
+
+    GameClock setAfterTick(final Runnable afterTick) {
+        this.afterTick = afterTick;
+
+        return this;
+    }
+
+    /**
+     * Told, in real time, how many nanoseconds after its deadline every tick started
+     */
+    GameClock setLateness(final LongConsumer lateness) {
+        this.lateness = lateness;
+
+        return this;
+    }
+
+    // Gets the clock thread to apply the inputs now instead of at the next tick
+    void wake() {
+        final Thread t = thread;
+        if (t != null) { LockSupport.unpark(t); }
+    }
+
+    synchronized void start() {
+        if (running) { return; }
+
+        running = true;
+        thread = new Thread(this::loop, "game-clock");
+        thread.start();
+    }
+
+    synchronized void stop() {
+        running = false;
+
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    /**
+     * Runs these many ticks right away on the calling thread, for offline runs
+     */
+    void advance(long ticks) {
+        for (long i = 0; i < ticks; i++) { tick(); }
+    }
+
+    private void tick() {
+        inputs.run();
+
+        ticks += 1;
+        ticksSinceDrop += 1;
+
+        if (ticksSinceDrop >= gravity.ticksPerDrop(level.getAsInt())) {
+            ticksSinceDrop = 0;
+            drop.run();
+        }
+
+        afterTick.run();
+    }
+
+    private void loop() {
+        long deadline = System.nanoTime();
+
+        while (running) {
+            tick();
+
+            if (!realTime) {
+                deadline = System.nanoTime();
+                continue;
+            }
+
+            deadline += periodNanos;
+
+            long wait;
+            while ((wait = deadline - System.nanoTime()) > 0 && running) {
+                LockSupport.parkNanos(wait);
+                inputs.run();
+            }
+
+            if (running) { lateness.accept(-wait); }
+
+            if (-wait > (MAX_LAG_TICKS * periodNanos)) { deadline = System.nanoTime(); }
+        }
+    }
+}
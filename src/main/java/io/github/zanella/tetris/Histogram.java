@@ -0,0 +1,88 @@
+package io.github.zanella.tetris;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size log-linear histogram of non-negative longs (nanoseconds, usually): every power of two
+ * is split in {@link #SUB_BUCKETS} buckets, so any value is counted within 1/8 of itself.
+ *
+ * Recording is one array increment, no allocation, and it can be read from another thread while
+ * being recorded (by JMX, say); the reading is then only as consistent as the counts it sees.
+ */
+final class Histogram {
+    private static final int SUB_BITS = 3;
+
+    static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    private static final int COUNT = 0, SUM = 1, MAX = 2; // in totals
+
+    private final AtomicLongArray counts = new AtomicLongArray((Long.SIZE - SUB_BITS + 1) * SUB_BUCKETS);
+
+    private final AtomicLongArray totals = new AtomicLongArray(3);
+
+    // Values below SUB_BUCKETS get a bucket each, then SUB_BUCKETS per power of two
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) { return (int) value; }
+
+        final int magnitude = (Long.SIZE - 1) - Long.numberOfLeadingZeros(value); // >= SUB_BITS
+        final int shift = magnitude - SUB_BITS;
+
+        return ((shift + 1) << SUB_BITS) + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    // Largest value counted in this bucket
+    static long highest(int bucket) {
+        if (bucket < SUB_BUCKETS) { return bucket; }
+
+        final int shift = (bucket >>> SUB_BITS) - 1;
+        final long lowest = ((long) (SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1)))) << shift;
+
+        return lowest + ((1L << shift) - 1);
+    }
+
+    void record(long value) {
+        if (value < 0) { value = 0; }
+
+        counts.incrementAndGet(bucket(value));
+        totals.incrementAndGet(COUNT);
+        totals.addAndGet(SUM, value);
+
+        long max;
+        while (value > (max = totals.get(MAX)) && !totals.compareAndSet(MAX, max, value)) { ; }
+    }
+
+    long count() { return totals.get(COUNT); }
+
+    long max() { return totals.get(MAX); }
+
+    double mean() {
+        final long count = count();
+
+        return (count == 0) ? 0 : ((double) totals.get(SUM) / count);
+    }
+
+    /**
+     * @param percentile 0 to 100
+     * @return a value no lower than that share of the recorded ones, 0 if there are none
+     */
+    long percentile(double percentile) {
+        final long count = count();
+        if (count == 0) { return 0; }
+
+        final long rank = Math.max(1, (long) Math.ceil(count * (percentile / 100)));
+
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+
+            if (seen >= rank) { return Math.min(highest(i), max()); }
+        }
+
+        return max();
+    }
+
+    void reset() {
+        for (int i = 0; i < counts.length(); i++) { counts.set(i, 0); }
+        for (int i = 0; i < totals.length(); i++) { totals.set(i, 0); }
+    }
+}
@@ -0,0 +1,144 @@
+package io.github.zanella.tetris;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Binary log of a CrushEngine game, all it takes to play it again exactly: a header with the magic,
+ * the format version, the well size and the seed, then one record per input. Games are played again
+ * with {@link PieceGenerator#RANDOM} and {@link Rules#CRUSH}, as TetrisCrush plays.
+ *
+ * Every record starts with a varint of (gravity ticks since the previous record << 4 | code), the code
+ * being an {@link CrushEngine.Input} ordinal, {@link #SELECT} (followed by the column and the row, as
+ * varints), {@link #DESELECT}, {@link #GARBAGE} (followed by the rows and the hole) or {@link #END}. Most records are one or two bytes.
+ */
+final class InputLog {
+    static final int MAGIC = 0x54435247; // "TCRG"
+
+    static final int VERSION = 1;
+
+    // Record codes, the Input ordinals (0 to 6) are the ones below them
+    static final int SELECT = 7, DESELECT = 8, GARBAGE = 9, END = 15;
+
+    private static final int CODE_BITS = 4;
+
+    private InputLog() {}
+
+    static int code(long record) { return (int) (record & ((1 << CODE_BITS) - 1)); }
+
+    static long ticks(long record) { return record >>> CODE_BITS; }
+
+    // Unsigned LEB128
+    static void putVarint(final OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static long getVarint(final ByteBuffer in) {
+        long value = 0;
+
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            final byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+
+            if (b >= 0) { return value; }
+        }
+
+        throw new IllegalArgumentException("Malformed varint at " + (in.position() - 1));
+    }
+
+    /**
+     * Writes the log of one game as the engine is played; attach it with {@link CrushEngine#setRecorder}
+     * before the first input.
+     *
+     * It is called from the thread driving the engine, but closing can come from anywhere (a shutdown hook,
+     * say), so writes are synchronized and anything after {@link #close()} is dropped.
+     */
+    static final class Recorder implements Closeable {
+        private final OutputStream out;
+
+        private long ticks = 0, lastRecord = 0; // ticks so far, and at the last record written
+
+        private boolean closed = false;
+
+        Recorder(final OutputStream out, final CrushEngine engine) {
+            if (engine.generator != PieceGenerator.RANDOM || engine.rules != Rules.CRUSH) {
+                throw new IllegalArgumentException("Only games with PieceGenerator.RANDOM and Rules.CRUSH can be replayed");
+            }
+
+            this.out = new BufferedOutputStream(out);
+
+            try {
+                final ByteBuffer header = ByteBuffer.allocate(Integer.BYTES + 1 + Long.BYTES);
+                header.putInt(MAGIC).put((byte) VERSION);
+                this.out.write(header.array(), 0, header.position());
+
+                putVarint(this.out, engine.columns);
+                putVarint(this.out, engine.rows);
+
+                header.clear();
+                header.putLong(engine.seed);
+                this.out.write(header.array(), 0, Long.BYTES);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        synchronized void tick() { ticks++; }
+
+        synchronized void input(final CrushEngine.Input input) { record(input.ordinal()); }
+
+        synchronized void select(int column, int row) {
+            if (record(SELECT)) {
+                write(column);
+                write(row);
+            }
+        }
+
+        synchronized void deselect() { record(DESELECT); }
+
+        synchronized void garbage(int rows, int hole) {
+            if (record(GARBAGE)) {
+                write(rows);
+                write(hole);
+            }
+        }
+
+        /**
+         * Ends the log, with the ticks after the last input, and closes the stream
+         */
+        @Override
+        public synchronized void close() throws IOException {
+            if (closed) { return; }
+
+            record(END);
+            closed = true;
+
+            out.close();
+        }
+
+        private boolean record(int code) {
+            if (closed) { return false; }
+
+            write(((ticks - lastRecord) << CODE_BITS) | code);
+            lastRecord = ticks;
+
+            return true;
+        }
+
+        private void write(long value) {
+            try {
+                putVarint(out, value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
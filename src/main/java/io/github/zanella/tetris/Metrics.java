@@ -0,0 +1,133 @@
+package io.github.zanella.tetris;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * How a game performs while it runs: paint durations, how late gravity ticks fire, how long an input takes
+ * to reach the screen, in {@link Histogram}s, and counts of pieces, lines and matches.
+ *
+ * Each histogram is recorded by one thread (the EDT paints, the clock ticks) and read by whoever asks,
+ * through JMX as io.github.zanella.tetris:type=Metrics,name=(game) and, with -Dtetris.metrics.log=(seconds),
+ * as a line on the console every so often.
+ */
+final class Metrics implements MetricsMBean {
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    final Histogram paintNanos = new Histogram(), tickJitterNanos = new Histogram(), inputLatencyNanos = new Histogram();
+
+    private final LongAdder pieces = new LongAdder(), lines = new LongAdder(),
+            matchedSquares = new LongAdder(), matches = new LongAdder();
+
+    private volatile long since = System.nanoTime();
+
+    /**
+     * Metrics of a game, registered with the platform MBean server, and logged if asked to
+     */
+    static Metrics of(final String game) {
+        final Metrics metrics = new Metrics();
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new StandardMBean(metrics, MetricsMBean.class),
+                    new ObjectName("io.github.zanella.tetris:type=Metrics,name=" + ObjectName.quote(game)));
+        } catch (JMException e) {
+            Debug.log("Metrics of " + game + " not registered: " + e);
+        }
+
+        final long seconds = Long.getLong("tetris.metrics.log", 0);
+        if (seconds > 0) { metrics.logEvery(game, seconds); }
+
+        return metrics;
+    }
+
+    private void logEvery(final String game, long seconds) {
+        Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread t = new Thread(r, "metrics-log");
+            t.setDaemon(true);
+
+            return t;
+        }).scheduleAtFixedRate(() -> System.out.println(game + " " + this), seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    void piecePlaced() { pieces.increment(); }
+
+    void linesCleared(int count) { if (count > 0) { lines.add(count); } }
+
+    // One successful swap, and every square its cascade cleared
+    void matched(int squares) {
+        matches.increment();
+        matchedSquares.add(squares);
+    }
+
+    private static double millis(long nanos) { return nanos / NANOS_PER_MILLI; }
+
+    @Override
+    public double getPaintMillisP50() { return millis(paintNanos.percentile(50)); }
+
+    @Override
+    public double getPaintMillisP99() { return millis(paintNanos.percentile(99)); }
+
+    @Override
+    public double getPaintMillisMax() { return millis(paintNanos.max()); }
+
+    @Override
+    public double getTickJitterMillisP50() { return millis(tickJitterNanos.percentile(50)); }
+
+    @Override
+    public double getTickJitterMillisP99() { return millis(tickJitterNanos.percentile(99)); }
+
+    @Override
+    public double getTickJitterMillisMax() { return millis(tickJitterNanos.max()); }
+
+    @Override
+    public double getInputLatencyMillisP50() { return millis(inputLatencyNanos.percentile(50)); }
+
+    @Override
+    public double getInputLatencyMillisP99() { return millis(inputLatencyNanos.percentile(99)); }
+
+    @Override
+    public double getInputLatencyMillisMax() { return millis(inputLatencyNanos.max()); }
+
+    @Override
+    public long getPieces() { return pieces.sum(); }
+
+    @Override
+    public double getPiecesPerSecond() { return pieces.sum() / ((System.nanoTime() - since) / 1e9); }
+
+    @Override
+    public long getLinesCleared() { return lines.sum(); }
+
+    @Override
+    public long getMatchedSquares() { return matchedSquares.sum(); }
+
+    @Override
+    public long getMatches() { return matches.sum(); }
+
+    @Override
+    public void reset() {
+        paintNanos.reset();
+        tickJitterNanos.reset();
+        inputLatencyNanos.reset();
+        pieces.reset();
+        lines.reset();
+        matchedSquares.reset();
+        matches.reset();
+        since = System.nanoTime();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("paint p50/p99/max %.2f/%.2f/%.2f ms, tick jitter p50/p99/max %.2f/%.2f/%.2f ms,"
+                        + " input latency p50/p99/max %.2f/%.2f/%.2f ms, %d pieces (%.2f/s), %d lines, %d matches (%d squares)",
+                getPaintMillisP50(), getPaintMillisP99(), getPaintMillisMax(),
+                getTickJitterMillisP50(), getTickJitterMillisP99(), getTickJitterMillisMax(),
+                getInputLatencyMillisP50(), getInputLatencyMillisP99(), getInputLatencyMillisMax(),
+                getPieces(), getPiecesPerSecond(), getLinesCleared(), getMatches(), getMatchedSquares());
+    }
+}
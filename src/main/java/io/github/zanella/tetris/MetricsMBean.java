@@ -0,0 +1,36 @@
+package io.github.zanella.tetris;
+
+/**
+ * What {@link Metrics} shows through JMX, times in milliseconds
+ */
+public interface MetricsMBean {
+    double getPaintMillisP50();
+
+    double getPaintMillisP99();
+
+    double getPaintMillisMax();
+
+    double getTickJitterMillisP50();
+
+    double getTickJitterMillisP99();
+
+    double getTickJitterMillisMax();
+
+    double getInputLatencyMillisP50();
+
+    double getInputLatencyMillisP99();
+
+    double getInputLatencyMillisMax();
+
+    long getPieces();
+
+    double getPiecesPerSecond();
+
+    long getLinesCleared();
+
+    long getMatchedSquares();
+
+    long getMatches();
+
+    void reset();
+}
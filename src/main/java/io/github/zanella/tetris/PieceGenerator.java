@@ -0,0 +1,140 @@
+package io.github.zanella.tetris;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Where the pieces of a game come from, as indexes into {@link Tetraminos#PIECES}.
+ *
+ * Every game makes its own generator from its own random stream, so games running side by side
+ * share nothing and the same seed always deals the same pieces. A generator saves where it is,
+ * so a restored game deals on from there without dealing everything before again.
+ */
+interface PieceGenerator {
+    int next();
+
+    // Bytes save() takes, the same every time
+    int stateSize();
+
+    void save(ByteBuffer out);
+
+    // Back to what save() wrote, from a generator made by the same factory
+    void restore(ByteBuffer in);
+
+    // How a game makes its generator out of its random stream
+    interface Factory {
+        PieceGenerator create(SplitMix random);
+    }
+
+    // Every piece once, in random order, then again; what Tetris plays
+    Factory BAG = Bag::new;
+
+    // Any piece, every time; what TetrisCrush plays
+    Factory RANDOM = Uniform::new;
+
+    // The given pieces over and over, for tests and puzzles
+    static Factory sequence(final int... pieces) {
+        if (pieces.length == 0) { throw new IllegalArgumentException("Empty piece sequence"); }
+
+        for (final int piece : pieces) {
+            if (piece < 0 || piece >= Tetraminos.PIECES.length) {
+                throw new IllegalArgumentException("No such piece " + piece);
+            }
+        }
+
+        final int[] copy = pieces.clone();
+        return random -> new Sequence(copy);
+    }
+
+    final class Bag implements PieceGenerator {
+        private final SplitMix random;
+
+        private final int[] bag = new int[Tetraminos.PIECES.length];
+
+        private int left = 0; // pieces not dealt yet, at the front of the bag
+
+        Bag(final SplitMix random) {
+            this.random = random;
+
+            for (int i = 0; i < bag.length; i++) { bag[i] = i; }
+        }
+
+        @Override
+        public int next() {
+            if (left == 0) { // Fisher-Yates
+                for (int i = bag.length - 1; i > 0; i--) {
+                    final int j = random.nextInt(i + 1);
+                    final int t = bag[i]; bag[i] = bag[j]; bag[j] = t;
+                }
+                left = bag.length;
+            }
+
+            return bag[--left];
+        }
+
+        @Override
+        public int stateSize() { return SplitMix.BYTES + bag.length + 1; }
+
+        @Override
+        public void save(final ByteBuffer out) {
+            random.save(out);
+            for (final int piece : bag) { out.put((byte) piece); }
+            out.put((byte) left);
+        }
+
+        @Override
+        public void restore(final ByteBuffer in) {
+            random.restore(in);
+            for (int i = 0; i < bag.length; i++) { bag[i] = in.get(); }
+            left = in.get();
+
+            if (left < 0 || left > bag.length) { throw new IllegalArgumentException(left + " pieces left in the bag"); }
+        }
+    }
+
+    final class Uniform implements PieceGenerator {
+        private final SplitMix random;
+
+        Uniform(final SplitMix random) { this.random = random; }
+
+        @Override
+        public int next() { return random.nextInt(Tetraminos.PIECES.length); }
+
+        @Override
+        public int stateSize() { return SplitMix.BYTES; }
+
+        @Override
+        public void save(final ByteBuffer out) { random.save(out); }
+
+        @Override
+        public void restore(final ByteBuffer in) { random.restore(in); }
+    }
+
+    final class Sequence implements PieceGenerator {
+        private final int[] pieces;
+
+        private int next = 0;
+
+        Sequence(final int[] pieces) { this.pieces = pieces; }
+
+        @Override
+        public int next() {
+            final int piece = pieces[next];
+            next = (next + 1) % pieces.length;
+
+            return piece;
+        }
+
+        @Override
+        public int stateSize() { return Integer.BYTES; }
+
+        @Override
+        public void save(final ByteBuffer out) { out.putInt(next); }
+
+        @Override
+        public void restore(final ByteBuffer in) {
+            next = in.getInt();
+
+            if (next < 0 || next >= pieces.length) { throw new IllegalArgumentException("No piece " + next + " in the sequence"); }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package io.github.zanella.tetris;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Plays an {@link InputLog} back into a new CrushEngine, with no clock and no view, as fast as it goes.
+ *
+ * The log is read sequentially from a ByteBuffer, normally a read-only mapping of the file, see {@link #open(Path)}.
+ * Seeking forward plays up to the given tick; seeking backwards starts over from the beginning,
+ * which is cheap enough since a replay is a few thousand inputs and no drawing.
+ */
+final class Replay {
+    private static final CrushEngine.Input[] INPUTS = CrushEngine.Input.values();
+
+    private final ByteBuffer log;
+
+    private final int firstRecord; // position right after the header
+
+    final int columns, rows;
+
+    final long seed;
+
+    private CrushEngine engine;
+
+    private long tick; // gravity ticks played so far
+
+    // Next record, read ahead so seek() knows when it is due
+    private long recordTick;
+    private int recordCode;
+
+    private boolean ended;
+
+    Replay(final ByteBuffer log) {
+        this.log = log.duplicate();
+
+        if (this.log.getInt() != InputLog.MAGIC) { throw new IllegalArgumentException("Not an input log"); }
+
+        final int version = this.log.get();
+        if (version != InputLog.VERSION) { throw new IllegalArgumentException("Unknown input log version " + version); }
+
+        this.columns = (int) InputLog.getVarint(this.log);
+        this.rows = (int) InputLog.getVarint(this.log);
+        this.seed = this.log.getLong();
+        this.firstRecord = this.log.position();
+
+        rewind();
+    }
+
+    /**
+     * Maps the file read-only; the mapping stays valid after the channel is closed
+     */
+    static Replay open(final Path file) throws IOException { return new Replay(map(file)); }
+
+    // The file, read-only, for as many Replays of it as needed
+    static ByteBuffer map(final Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    CrushEngine engine() { return engine; }
+
+    long tick() { return tick; }
+
+    boolean isEnded() { return ended; }
+
+    // Back to the start of the game
+    private void rewind() {
+        engine = new CrushEngine(columns, rows, seed);
+        tick = 0;
+        recordTick = 0;
+        ended = false;
+
+        log.position(firstRecord);
+        readAhead();
+    }
+
+    private void readAhead() {
+        final long record = InputLog.getVarint(log);
+
+        recordTick += InputLog.ticks(record);
+        recordCode = InputLog.code(record);
+    }
+
+    private void advanceTo(long target) {
+        for (; tick < target; tick++) { engine.tick(); }
+    }
+
+    /**
+     * Plays the ticks up to the next input, and the input
+     *
+     * @return false once the end of the log is reached
+     */
+    boolean next() {
+        if (ended) { return false; }
+
+        advanceTo(recordTick);
+
+        switch (recordCode) {
+            case InputLog.SELECT:
+                final int column = (int) InputLog.getVarint(log);
+                engine.select(column, (int) InputLog.getVarint(log));
+                break;
+            case InputLog.DESELECT:
+                engine.deselect();
+                break;
+            case InputLog.GARBAGE:
+                final int rows = (int) InputLog.getVarint(log);
+                engine.addGarbage(rows, (int) InputLog.getVarint(log));
+                break;
+            case InputLog.END:
+                ended = true;
+                return false;
+            default:
+                engine.step(INPUTS[recordCode]);
+        }
+
+        readAhead();
+
+        return true;
+    }
+
+    /**
+     * Plays up to, and including the inputs of, the given tick, or to the end of the log if it's past it
+     */
+    void seek(long target) {
+        if (target < tick) { rewind(); }
+
+        while (!ended && recordTick <= target) { next(); }
+
+        if (!ended) { advanceTo(target); }
+    }
+
+    void playToEnd() {
+        while (next()) { ; }
+    }
+
+    /**
+     * Re-scores logs headlessly: prints the file, final score, level and ticks of each one
+     */
+    public static void main(String[] args) throws IOException {
+        for (final String file : args) {
+            final Replay replay = open(Paths.get(file));
+            replay.playToEnd();
+
+            System.out.println(file + " score: " + replay.engine.score() + " level: " + replay.engine.level()
+                    + " ticks: " + replay.tick);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package io.github.zanella.tetris;
+
+/**
+ * What a CrushEngine plays by: how pieces are colored, what scores and which moves there are.
+ *
+ * {@link #CRUSH} is TetrisCrush and {@link #CLASSIC} is Tetris; custom rules override only what they change,
+ * scoring say, and everything else (the well, collisions, drops, clears) stays the engine's, for both games.
+ */
+interface Rules {
+    // Random colors, swaps and cascades
+    Rules CRUSH = new Rules() {};
+
+    // A color per piece, no swaps, the up key turns the other way and hard drops are free
+    Rules CLASSIC = new Rules() {
+        @Override
+        public int colors(int piece, final SplitMix random) { return Tetraminos.pieceColors(piece); }
+
+        @Override
+        public int rotation() { return -1; }
+
+        @Override
+        public long hardDropPoints(int rows) { return 0; }
+
+        @Override
+        public boolean swaps() { return false; }
+    };
+
+    // Palette index of each square of a new piece, 8 bits apiece, see Tetramino.colors
+    default int colors(int piece, final SplitMix random) { return Tetraminos.randomColors(random); }
+
+    // Quarter turns of a ROTATE, +1 clockwise
+    default int rotation() { return +1; }
+
+    default long softDropPoints() { return 1; }
+
+    default long hardDropPoints(int rows) { return rows; }
+
+    // Rows cleared at once
+    default long clearPoints(int rows, int level) {
+        switch (rows) {
+            case 0:  return 0;
+            case 1:  return 100;
+            case 2:  return 300;
+            case 3:  return 500;
+            default: return 800;
+        }
+    }
+
+    // Whether squares can be swapped into matches at all
+    default boolean swaps() { return true; }
+
+    // Squares cleared at this step of a cascade, 1 for the swap's own matches
+    default long matchPoints(int squares, int step) { return 10L * step * squares; }
+}
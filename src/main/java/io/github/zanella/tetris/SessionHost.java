@@ -0,0 +1,207 @@
+package io.github.zanella.tetris;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs many headless CrushEngine games on a few threads: every session ticks on its own schedule,
+ * but all of them share one scheduled pool, so thousands of boards don't take thousands of threads.
+ *
+ * A session schedules its next tick only once it's done with the current one, so it's never run by two
+ * threads at once and is the single writer of its engine, like the clock thread of an {@link EngineLoop}.
+ * Other threads send it inputs through a bounded {@link CommandQueue}; when that's full the input is
+ * refused, so a bot that floods a session gets pushed back instead of piling up work.
+ */
+class SessionHost implements AutoCloseable {
+    static final int QUEUE_CAPACITY = 64; // inputs waiting per session
+
+    private static final int MAX_LAG_TICKS = 10; // behind this, a session starts over from now, as GameClock does
+
+    final int columns, rows;
+
+    private final ScheduledThreadPoolExecutor pool;
+
+    private final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+
+    // Totals over every session, ever
+    private final LongAdder ticks = new LongAdder(), inputs = new LongAdder(), refused = new LongAdder(),
+            resyncs = new LongAdder();
+
+    private final long started = System.nanoTime();
+
+    SessionHost(final int threads, final int columns, final int rows) {
+        if (threads <= 0) { throw new IllegalArgumentException("Threads must be positive, got " + threads); }
+
+        this.columns = columns;
+        this.rows = rows;
+
+        final AtomicInteger count = new AtomicInteger();
+        this.pool = new ScheduledThreadPoolExecutor(threads, r -> {
+            final Thread t = new Thread(r, "session-host-" + count.incrementAndGet());
+            t.setDaemon(true);
+
+            return t;
+        });
+        this.pool.setRemoveOnCancelPolicy(true);
+    }
+
+    SessionHost(final int columns, final int rows) { this(Runtime.getRuntime().availableProcessors(), columns, rows); }
+
+    /**
+     * Starts a new game right away
+     *
+     * @param generator {@link PieceGenerator#BAG} for Tetris-like dealing, {@link PieceGenerator#RANDOM} for TetrisCrush
+     * @param rules     {@link Rules#CLASSIC} for Tetris, {@link Rules#CRUSH} for TetrisCrush
+     */
+    Session open(long seed, final PieceGenerator.Factory generator, final Rules rules, int ticksPerSecond,
+                 final GameClock.Gravity gravity) {
+        final Session session = new Session(new CrushEngine(columns, rows, seed, generator, rules), ticksPerSecond, gravity);
+
+        sessions.add(session);
+        session.schedule(0);
+
+        return session;
+    }
+
+    Session open(long seed) { return open(seed, PieceGenerator.RANDOM, Rules.CRUSH, 60, GameClock.Gravity.CLASSIC); }
+
+    int sessions() { return sessions.size(); }
+
+    Stats stats() {
+        return new Stats(sessions.size(), ticks.sum(), inputs.sum(), refused.sum(), resyncs.sum(),
+                System.nanoTime() - started);
+    }
+
+    // Stops every session and the pool
+    @Override
+    public void close() {
+        for (final Session session : sessions) { session.close(); }
+
+        pool.shutdownNow();
+    }
+
+    final class Session implements Runnable {
+        private final CrushEngine engine;
+
+        private final CommandQueue commands = new CommandQueue(QUEUE_CAPACITY);
+
+        private final GameClock clock; // never started, run() advances it one tick at a time
+
+        private final long periodNanos;
+
+        private long deadline; // of the next tick, pool thread only
+
+        private volatile ScheduledFuture<?> next;
+
+        private volatile boolean closed = false;
+
+        // Published after every tick, for other threads to read
+        private volatile long score;
+        private volatile boolean over;
+
+        private Session(final CrushEngine engine, int ticksPerSecond, final GameClock.Gravity gravity) {
+            this.engine = engine;
+            this.clock = new GameClock(ticksPerSecond, gravity, engine::level, engine::tick).setInputs(this::drain);
+            this.periodNanos = TimeUnit.SECONDS.toNanos(1) / ticksPerSecond;
+            this.deadline = System.nanoTime();
+        }
+
+        long seed() { return engine.seed; }
+
+        Rules rules() { return engine.rules; }
+
+        long score() { return score; }
+
+        boolean isOver() { return over; }
+
+        boolean isClosed() { return closed; }
+
+        /**
+         * @return false if the input was refused because too many are already waiting, or the session is closed
+         */
+        boolean input(final CrushEngine.Input input) { return offer(EngineLoop.command(input)); }
+
+        boolean select(int column, int row) {
+            return EngineLoop.selectable(column, row) && offer(EngineLoop.selectCommand(column, row));
+        }
+
+        private boolean offer(int command) {
+            if (closed) { return false; }
+
+            if (!commands.offer(command)) {
+                refused.increment();
+                return false;
+            }
+
+            return true;
+        }
+
+        private void drain() { inputs.add(commands.drain(command -> EngineLoop.apply(engine, command))); }
+
+        void close() {
+            closed = true;
+            sessions.remove(this);
+
+            final ScheduledFuture<?> f = next;
+            if (f != null) { f.cancel(false); }
+        }
+
+        @Override
+        public void run() {
+            if (closed) { return; }
+
+            clock.advance(1);
+            ticks.increment();
+
+            score = engine.score();
+            over = engine.isOver();
+
+            deadline += periodNanos;
+
+            long delay = deadline - System.nanoTime();
+            if (delay < -(MAX_LAG_TICKS * periodNanos)) {
+                deadline -= delay;
+                delay = 0;
+                resyncs.increment();
+            }
+
+            schedule(Math.max(0, delay));
+        }
+
+        private void schedule(long delayNanos) {
+            if (!closed && !pool.isShutdown()) { next = pool.schedule(this, delayNanos, TimeUnit.NANOSECONDS); }
+        }
+    }
+
+    static final class Stats {
+        final int sessions;
+
+        final long ticks, inputs, refused, resyncs; // refused inputs, and sessions that fell too far behind
+
+        final long nanos; // since the host started
+
+        Stats(int sessions, long ticks, long inputs, long refused, long resyncs, long nanos) {
+            this.sessions = sessions;
+            this.ticks = ticks;
+            this.inputs = inputs;
+            this.refused = refused;
+            this.resyncs = resyncs;
+            this.nanos = nanos;
+        }
+
+        double ticksPerSecond() { return ticks / (nanos / 1e9); }
+
+        double inputsPerSecond() { return inputs / (nanos / 1e9); }
+
+        @Override
+        public String toString() {
+            return String.format("Stats(sessions=%d, ticks=%d (%.0f/s), inputs=%d (%.0f/s), refused=%d, resyncs=%d)",
+                    sessions, ticks, ticksPerSecond(), inputs, inputsPerSecond(), refused, resyncs);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package io.github.zanella.tetris;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Whole CrushEngine games as a few hundred bytes: a header with the magic, the format version, the well size,
+ * the rules, the piece generator and the seed, then the engine's own state, its cells packed a nibble each.
+ *
+ * The random streams are saved where they are, so a snapshot restores, in the same time however long
+ * the game, into a game that goes on exactly as the saved one would have.
+ *
+ * Buffers are the caller's, to be reused: {@link #allocate(CrushEngine)} one, then clear() it before every write.
+ */
+final class Snapshot {
+    static final int MAGIC = 0x5443534E; // "TCSN"
+
+    static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = Integer.BYTES + 1 + (2 * Short.BYTES) + 2 + Long.BYTES;
+
+    // Rules and generators in the header; custom ones, sequences included, have to be given back to read()
+    private static final int CRUSH = 0, CLASSIC = 1;
+    private static final int RANDOM = 0, BAG = 1;
+    private static final int CUSTOM = 0xFF;
+
+    private Snapshot() {}
+
+    static int size(final CrushEngine engine) { return HEADER_BYTES + engine.stateSize(); }
+
+    static ByteBuffer allocate(final CrushEngine engine) { return ByteBuffer.allocateDirect(size(engine)); }
+
+    static void write(final CrushEngine engine, final ByteBuffer out) {
+        out.putInt(MAGIC).put((byte) VERSION);
+        out.putShort((short) engine.columns).putShort((short) engine.rows);
+        out.put((byte) kind(engine.rules)).put((byte) kind(engine.generator));
+        out.putLong(engine.seed);
+
+        engine.save(out);
+    }
+
+    /**
+     * @param generator the one the saved game was dealt with, null for the one in the header
+     * @param rules     and the ones it was played by, null for the ones in the header
+     * @throws IllegalArgumentException if they aren't the ones in the header, or the snapshot is cut short
+     */
+    static CrushEngine read(final ByteBuffer in, final PieceGenerator.Factory generator, final Rules rules) {
+        if (in.remaining() < HEADER_BYTES || in.getInt() != MAGIC) { throw new IllegalArgumentException("Not a snapshot"); }
+
+        final int version = in.get();
+        if (version != VERSION) { throw new IllegalArgumentException("Unknown snapshot version " + version); }
+
+        final int columns = in.getShort(), rows = in.getShort();
+        final int savedRules = in.get() & 0xFF, savedGenerator = in.get() & 0xFF;
+        final long seed = in.getLong();
+
+        if (rules != null && kind(rules) != savedRules) { throw new IllegalArgumentException("Played by other rules"); }
+        if (generator != null && kind(generator) != savedGenerator) {
+            throw new IllegalArgumentException("Dealt by another generator");
+        }
+
+        final CrushEngine engine = new CrushEngine(columns, rows, seed,
+                (generator != null) ? generator : generator(savedGenerator), (rules != null) ? rules : rules(savedRules));
+
+        if (in.remaining() < engine.stateSize()) {
+            throw new IllegalArgumentException("Snapshot cut short, " + in.remaining() + " of " + engine.stateSize() + " bytes");
+        }
+
+        engine.restore(in);
+
+        return engine;
+    }
+
+    /**
+     * A game that goes on independently from where this one is, for trying things out
+     *
+     * @param scratch reused for the snapshot, at least {@link #size(CrushEngine)} bytes
+     */
+    static CrushEngine fork(final CrushEngine engine, final ByteBuffer scratch) {
+        scratch.clear();
+        write(engine, scratch);
+        scratch.flip();
+
+        return read(scratch, engine.generator, engine.rules);
+    }
+
+    static void save(final CrushEngine engine, final Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            final MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, size(engine));
+
+            write(engine, out);
+            out.force();
+        }
+    }
+
+    /**
+     * @param generator null for the one in the header
+     * @param rules     null for the ones in the header
+     */
+    static CrushEngine load(final Path file, final PieceGenerator.Factory generator, final Rules rules) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            final CrushEngine engine = read(in, generator, rules);
+
+            if (in.hasRemaining()) { throw new IllegalArgumentException(in.remaining() + " bytes after the snapshot"); }
+
+            return engine;
+        }
+    }
+
+    private static int kind(final Rules rules) {
+        return (rules == Rules.CRUSH) ? CRUSH : (rules == Rules.CLASSIC) ? CLASSIC : CUSTOM;
+    }
+
+    private static int kind(final PieceGenerator.Factory generator) {
+        return (generator == PieceGenerator.RANDOM) ? RANDOM : (generator == PieceGenerator.BAG) ? BAG : CUSTOM;
+    }
+
+    private static Rules rules(int saved) {
+        switch (saved) {
+            case CRUSH:   return Rules.CRUSH;
+            case CLASSIC: return Rules.CLASSIC;
+            case CUSTOM:  throw new IllegalArgumentException("Played by custom rules, give them to read()");
+            default:      throw new IllegalArgumentException("Unknown rules " + saved);
+        }
+    }
+
+    private static PieceGenerator.Factory generator(int saved) {
+        switch (saved) {
+            case RANDOM: return PieceGenerator.RANDOM;
+            case BAG:    return PieceGenerator.BAG;
+            case CUSTOM: throw new IllegalArgumentException("Dealt by a custom generator, give it to read()");
+            default:     throw new IllegalArgumentException("Unknown generator " + saved);
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package io.github.zanella.tetris;
+
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+import static io.github.zanella.tetris.Tetraminos.*;
+
+/**
+ * A game as a stream of binary frames for spectators: only the squares that changed since the last frame,
+ * and a keyframe with all of them every so often, or sooner when a new viewer asks for one.
+ *
+ * Set as the engine's events it learns which rows changed, and {@link #publish(Frame)}, on the engine's
+ * thread, compares just those with what viewers were last sent. Each frame is encoded once, for every viewer.
+ *
+ * A frame is a short length (of what follows it), the flags, varints sequence and score, the piece as
+ * {@link Tetramino#write(ByteBuffer)} puts it and a varint count of runs. Every run is a varint gap, squares left as
+ * they were in well order, and a byte of (length - 1) << 4 | palette index for the squares after it.
+ */
+class SpectatorFeed implements EngineEvents {
+    static final int KEYFRAME = 1, PAUSED = 2, OVER = 4; // flags
+
+    static final int KEYFRAME_EVERY = 120; // frames
+
+    private static final int MAX_RUN = 1 << Well.CELL_BITS;
+
+    final int columns, rows;
+
+    private final byte[] shown; // squares as the last frame left them
+
+    private int top, bottom = -1; // rows changed since the last frame
+
+    private final ByteBuffer frame, runs; // scratch
+
+    private long sequence = 0;
+
+    private long score = -1;
+
+    private int flags = -1;
+
+    private final Tetramino piece = new Tetramino();
+
+    private volatile boolean keyframeWanted = true;
+
+    private volatile Consumer<ByteBuffer> sink = f -> {};
+
+    SpectatorFeed(int columns, int rows) {
+        this.columns = columns;
+        this.rows = rows;
+        this.top = rows;
+        this.shown = new byte[columns * rows];
+        this.runs = ByteBuffer.allocate(3 * columns * rows); // a gap of 2 bytes and a run for every square, at worst
+        this.frame = ByteBuffer.allocate(32 + Tetramino.BYTES + runs.capacity());
+
+        if (frame.capacity() > 0xFFFF) { throw new IllegalArgumentException("A " + columns + "x" + rows + " well is too big to stream"); }
+    }
+
+    /**
+     * Receives every frame, read-only, on the engine's thread
+     */
+    void setSink(final Consumer<ByteBuffer> sink) { this.sink = sink; }
+
+    // From any thread, the next frame will be a keyframe
+    void requestKeyframe() { keyframeWanted = true; }
+
+    @Override
+    public void rowsChanged(int top, int bottom) {
+        this.top = Math.min(this.top, top);
+        this.bottom = Math.max(this.bottom, bottom);
+    }
+
+    /**
+     * Encodes what changed since the last frame and hands it to the sink, if anything did
+     */
+    void publish(final Frame f) {
+        final boolean keyframe = keyframeWanted || (sequence % KEYFRAME_EVERY) == 0;
+        final Tetramino current = f.piece;
+        final int state = (f.paused ? PAUSED : 0) | (f.over ? OVER : 0);
+
+        if (!keyframe && top > bottom && f.score == score && state == flags && same(current)) { return; }
+
+        keyframeWanted = false;
+        score = f.score;
+        flags = state;
+        piece.copyFrom(current);
+
+        runs.clear();
+        final int count = keyframe ? runs(f.well, 0, rows - 1, true) : runs(f.well, top, bottom, false);
+        runs.flip();
+
+        frame.clear();
+        frame.putShort((short) 0).put((byte) (state | (keyframe ? KEYFRAME : 0)));
+        putVarint(frame, sequence);
+        putVarint(frame, score);
+        piece.write(frame);
+        putVarint(frame, count);
+        frame.put(runs);
+        frame.putShort(0, (short) (frame.position() - 2));
+        frame.flip();
+
+        top = rows;
+        bottom = -1;
+        sequence += 1;
+
+        final ByteBuffer copy = ByteBuffer.allocate(frame.remaining()).put(frame);
+        copy.flip();
+
+        sink.accept(copy.asReadOnlyBuffer());
+    }
+
+    private boolean same(final Tetramino current) {
+        return current.piece == piece.piece && current.rotation == piece.rotation
+                && current.x == piece.x && current.y == piece.y && current.colors == piece.colors;
+    }
+
+    // Writes the runs of changed squares between these rows, or of all of them, and takes them as shown
+    private int runs(final Well well, int from, int to, boolean all) {
+        final ByteBuffer out = runs;
+        int count = 0, next = 0; // square after the last run
+
+        int start = -1, length = 0;
+        byte color = 0;
+
+        for (int k = from * columns; k < ((to + 1) * columns); k++) {
+            final byte c = well.get(k % columns, k / columns);
+            final boolean changed = all || c != shown[k];
+
+            if (length > 0 && (!changed || c != color || length == MAX_RUN)) {
+                putVarint(out, start - next);
+                out.put((byte) (((length - 1) << Well.CELL_BITS) | color));
+                next = start + length;
+                count += 1;
+                length = 0;
+            }
+
+            if (changed) {
+                if (length == 0) {
+                    start = k;
+                    color = c;
+                }
+                length += 1;
+                shown[k] = c;
+            }
+        }
+
+        if (length > 0) {
+            putVarint(out, start - next);
+            out.put((byte) (((length - 1) << Well.CELL_BITS) | color));
+            count += 1;
+        }
+
+        return count;
+    }
+
+    static void putVarint(final ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    static long getVarint(final ByteBuffer in) {
+        long value = 0;
+
+        for (int shift = 0; ; shift += 7) {
+            final byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+
+            if (b >= 0) { return value; }
+        }
+    }
+
+    /**
+     * A spectator's picture of the game, brought up to date frame by frame
+     */
+    static final class Picture {
+        final int columns, rows;
+
+        final byte[] cells; // palette indices, in well order
+
+        final Tetramino piece = new Tetramino();
+
+        long sequence = -1, score;
+
+        int flags;
+
+        Picture(int columns, int rows) {
+            this.columns = columns;
+            this.rows = rows;
+            this.cells = new byte[columns * rows];
+        }
+
+        /**
+         * Applies one frame, its length included
+         *
+         * @return false if it was skipped, a delta before any keyframe or one out of sequence
+         */
+        boolean apply(final ByteBuffer frame) {
+            final int end = frame.position() + 2 + (frame.getShort() & 0xFFFF);
+            final int f = frame.get();
+            final long n = getVarint(frame);
+
+            if ((f & KEYFRAME) == 0 && (sequence < 0 || n != (sequence + 1))) {
+                frame.position(end);
+                return false;
+            }
+
+            sequence = n;
+            flags = f;
+            score = getVarint(frame);
+            piece.read(frame);
+
+            int k = 0;
+            for (long runs = getVarint(frame); runs > 0; runs--) {
+                k += (int) getVarint(frame);
+
+                final int run = frame.get() & 0xFF;
+                final int length = (run >>> Well.CELL_BITS) + 1;
+                for (int i = 0; i < length; i++) { cells[k++] = (byte) (run & (MAX_RUN - 1)); }
+            }
+
+            frame.position(end);
+
+            return true;
+        }
+    }
+}
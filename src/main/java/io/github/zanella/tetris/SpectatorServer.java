@@ -0,0 +1,189 @@
+package io.github.zanella.tetris;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Sends a {@link SpectatorFeed} to whoever connects, from a single selector thread.
+ *
+ * Frames are shared by every viewer, each only keeps its own position in them, and whatever a viewer has
+ * waiting goes out in one gathering write. A viewer that can't keep up loses the frames it hasn't started
+ * on yet and picks up again from the next keyframe, so it never holds the game or the others back.
+ */
+class SpectatorServer implements Closeable {
+    static final int MAX_PENDING = 64; // frames waiting per viewer
+
+    private final ServerSocketChannel server;
+
+    private final Selector selector;
+
+    private final SpectatorFeed feed;
+
+    private final List<Viewer> viewers = new CopyOnWriteArrayList<>();
+
+    private final ByteBuffer discard = ByteBuffer.allocate(256); // viewers have nothing to say
+
+    private volatile boolean running = false;
+
+    SpectatorServer(final InetSocketAddress address, final SpectatorFeed feed) throws IOException {
+        this.feed = feed;
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        this.server.bind(address);
+        this.server.configureBlocking(false);
+        this.server.register(selector, SelectionKey.OP_ACCEPT);
+
+        feed.setSink(this::broadcast);
+    }
+
+    int port() throws IOException { return ((InetSocketAddress) server.getLocalAddress()).getPort(); }
+
+    int viewers() { return viewers.size(); }
+
+    SpectatorServer start() {
+        running = true;
+
+        final Thread t = new Thread(this::run, "spectators");
+        t.setDaemon(true);
+        t.start();
+
+        return this;
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+
+        server.close();
+    }
+
+    // On the engine's thread
+    private void broadcast(final ByteBuffer frame) {
+        if (viewers.isEmpty()) { return; }
+
+        final boolean keyframe = (frame.get(2) & SpectatorFeed.KEYFRAME) != 0;
+
+        for (final Viewer v : viewers) { v.offer(frame, keyframe); }
+
+        selector.wakeup();
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                selector.select();
+
+                for (final SelectionKey key : selector.selectedKeys()) {
+                    if (!key.isValid()) { continue; }
+
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else if (key.isReadable()) {
+                        ((Viewer) key.attachment()).read();
+                    }
+                }
+                selector.selectedKeys().clear();
+
+                for (final Viewer v : viewers) { v.flush(); }
+            }
+        } catch (IOException e) {
+            Debug.log("Spectators stopped: " + e);
+        } finally {
+            for (final Viewer v : viewers) { v.close(); }
+            try { selector.close(); } catch (IOException ignored) { }
+        }
+    }
+
+    private void accept() throws IOException {
+        for (SocketChannel channel; (channel = server.accept()) != null; ) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+
+            viewers.add(new Viewer(channel, channel.register(selector, SelectionKey.OP_READ)));
+        }
+
+        feed.requestKeyframe();
+    }
+
+    private final class Viewer {
+        private final SocketChannel channel;
+
+        private final SelectionKey key;
+
+        private final ArrayDeque<ByteBuffer> pending = new ArrayDeque<>(); // under its own lock
+
+        private final ByteBuffer[] batch = new ByteBuffer[MAX_PENDING];
+
+        private boolean synced = false; // had a keyframe since it joined or last fell behind
+
+        Viewer(final SocketChannel channel, final SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+
+            key.attach(this);
+        }
+
+        void offer(final ByteBuffer frame, boolean keyframe) {
+            synchronized (pending) {
+                if (pending.size() >= MAX_PENDING) { // too far behind, only the frame already on its way goes on
+                    final ByteBuffer started = pending.peekFirst();
+                    pending.clear();
+                    if (started.position() > 0) { pending.add(started); }
+
+                    synced = false;
+                    feed.requestKeyframe();
+                }
+
+                if (keyframe) { synced = true; }
+
+                if (synced) { pending.add(frame.duplicate()); }
+            }
+        }
+
+        void flush() {
+            synchronized (pending) {
+                if (pending.isEmpty() || !channel.isOpen()) { return; }
+
+                int n = 0;
+                for (final ByteBuffer frame : pending) { batch[n++] = frame; }
+
+                try {
+                    channel.write(batch, 0, n);
+                } catch (IOException e) {
+                    close();
+                    return;
+                }
+
+                while (!pending.isEmpty() && !pending.peekFirst().hasRemaining()) { pending.removeFirst(); }
+
+                // The socket buffer is full: told when it drains instead of spinning
+                key.interestOps(pending.isEmpty() ? SelectionKey.OP_READ : (SelectionKey.OP_READ | SelectionKey.OP_WRITE));
+            }
+        }
+
+        void read() {
+            try {
+                discard.clear();
+                if (channel.read(discard) < 0) { close(); }
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        void close() {
+            viewers.remove(this);
+            key.cancel();
+            try { channel.close(); } catch (IOException ignored) { }
+        }
+    }
+}
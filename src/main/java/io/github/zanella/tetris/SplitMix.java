@@ -0,0 +1,78 @@
+package io.github.zanella.tetris;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The random stream of a game: SplittableRandom's splitmix64, number for number the same as
+ * java.util.SplittableRandom with the same seed, but with its two words of state out in the open,
+ * so a {@link Snapshot} saves where the stream is instead of how many pieces it took to get there.
+ */
+final class SplitMix {
+    static final int BYTES = 2 * Long.BYTES; // taken by save()
+
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private long seed, gamma;
+
+    SplitMix(long seed) { this(seed, GOLDEN_GAMMA); }
+
+    private SplitMix(long seed, long gamma) {
+        this.seed = seed;
+        this.gamma = gamma;
+    }
+
+    /**
+     * A stream of its own, as SplittableRandom.split()
+     */
+    SplitMix split() { return new SplitMix(nextLong(), mixGamma(nextSeed())); }
+
+    long nextLong() { return mix64(nextSeed()); }
+
+    int nextInt() { return mix32(nextSeed()); }
+
+    // 0 (inclusive) to bound (exclusive), unbiased
+    int nextInt(int bound) {
+        if (bound <= 0) { throw new IllegalArgumentException("Bound must be positive, got " + bound); }
+
+        int r = mix32(nextSeed());
+        final int m = bound - 1;
+        if ((bound & m) == 0) { // a power of 2
+            r &= m;
+        } else { // reject the few values that would make the low ones likelier
+            for (int u = r >>> 1; u + m - (r = u % bound) < 0; u = mix32(nextSeed()) >>> 1) { }
+        }
+
+        return r;
+    }
+
+    void save(final ByteBuffer out) { out.putLong(seed).putLong(gamma); }
+
+    void restore(final ByteBuffer in) {
+        seed = in.getLong();
+        gamma = in.getLong();
+
+        if ((gamma & 1L) == 0) { throw new IllegalArgumentException("Not a random stream, even gamma " + gamma); }
+    }
+
+    private long nextSeed() { return seed += gamma; }
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private static int mix32(long z) {
+        z = (z ^ (z >>> 33)) * 0x62a9d9ed799705f5L;
+        return (int) (((z ^ (z >>> 28)) * 0xcb24d0a5c88c35b3L) >>> 32);
+    }
+
+    private static long mixGamma(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        z = (z ^ (z >>> 33)) | 1L;
+
+        // Gammas with too few bit flips make poor streams
+        return (Long.bitCount(z ^ (z >>> 1)) < 24) ? (z ^ 0xaaaaaaaaaaaaaaaaL) : z;
+    }
+}
@@ -0,0 +1,70 @@
+package io.github.zanella.tetris;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * Every square the game draws, one per palette color, rendered once into images compatible
+ * with the screen so that drawing a square is a single blit
+ */
+class Sprites {
+    private final Image[] squares; // pitch x pitch, the square over its black background
+
+    private final Image[] outlines; // transparent but for the 3D outline of a highlighted square
+
+    Sprites(final int pitch, final int side, final boolean raised) {
+        squares = new Image[Well.PALETTE.length];
+        outlines = new Image[Well.PALETTE.length];
+
+        for (int c = 0; c < Well.PALETTE.length; c++) {
+            final Color color = Well.PALETTE[c];
+
+            squares[c] = render(pitch, pitch, Transparency.OPAQUE, g -> {
+                g.setColor(Color.BLACK);
+                g.fillRect(0, 0, pitch, pitch);
+
+                g.setColor(color);
+                if (raised) {
+                    g.fill3DRect(0, 0, side, side, true);
+                } else {
+                    g.fillRect(0, 0, side, side);
+                }
+            });
+
+            // draw3DRect covers one pixel more than its size
+            outlines[c] = render(side + 1, side + 1, Transparency.BITMASK, g -> {
+                g.setColor(color);
+                g.draw3DRect(0, 0, side, side, true);
+            });
+        }
+    }
+
+    private interface Painting { void paint(Graphics2D g); }
+
+    static BufferedImage compatibleImage(int width, int height, int transparency) {
+        if (GraphicsEnvironment.isHeadless()) {
+            return new BufferedImage(width, height,
+                    (transparency == Transparency.OPAQUE) ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+        }
+
+        return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                .getDefaultConfiguration().createCompatibleImage(width, height, transparency);
+    }
+
+    private static Image render(int width, int height, int transparency, final Painting painting) {
+        final BufferedImage image = compatibleImage(width, height, transparency);
+
+        final Graphics2D g = image.createGraphics();
+        try {
+            painting.paint(g);
+        } finally {
+            g.dispose();
+        }
+
+        return image;
+    }
+
+    void drawSquare(final Graphics g, byte color, int px, int py) { g.drawImage(squares[color], px, py, null); }
+
+    void drawOutline(final Graphics g, byte color, int px, int py) { g.drawImage(outlines[color], px, py, null); }
+}
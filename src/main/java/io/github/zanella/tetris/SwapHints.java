@@ -0,0 +1,159 @@
+package io.github.zanella.tetris;
+
+/**
+ * Index of every adjacent swap that would make a crush match, kept as two bitboards:
+ * bit x of right[y] is the swap of (x, y) with (x + 1, y), bit x of down[y] the one with (x, y + 1).
+ *
+ * Whether a swap matches only depends on the run lengths, capped at 2, on each side of both squares,
+ * so when a square changes only the swaps within 3 squares of it are checked again.
+ * {@link #refresh()} only looks at the squares {@link Well#changedColumns(int)} says changed, and of those
+ * only the ones whose color isn't the one it last indexed count.
+ */
+class SwapHints {
+    private final Well well;
+
+    private final int columns, rows;
+
+    private final long[] right, down;
+
+    private final byte[] indexed; // color of every square when last indexed
+
+    private boolean indexedAll = false; // the first refresh looks at every square
+
+    private final long[] stale; // swaps to check again, by their top/left square
+
+    SwapHints(final Well well) {
+        this.well = well;
+        this.columns = well.columns;
+        this.rows = well.rows;
+        this.right = new long[rows];
+        this.down = new long[rows];
+        this.indexed = new byte[columns * rows];
+        this.stale = new long[rows];
+    }
+
+    static int pack(int x, int y, boolean vertical) { return (x << 16) | (y << 1) | (vertical ? 1 : 0); }
+
+    static int x(int swap) { return swap >>> 16; }
+
+    static int y(int swap) { return (swap & 0xFFFF) >>> 1; }
+
+    // Column and row of the other square of the swap
+    static int otherX(int swap) { return vertical(swap) ? x(swap) : x(swap) + 1; }
+
+    static int otherY(int swap) { return vertical(swap) ? y(swap) + 1 : y(swap); }
+
+    static boolean vertical(int swap) { return (swap & 1) != 0; }
+
+    interface SwapConsumer { void accept(int swap); }
+
+    /**
+     * Brings the index up to date with the well
+     */
+    void refresh() {
+        boolean anyStale = false;
+
+        for (int y = 0; y < rows; y++) {
+            for (long xs = indexedAll ? well.changedColumns(y) : well.fullRow(); xs != 0; xs &= xs - 1) {
+                final int x = Long.numberOfTrailingZeros(xs);
+
+                final byte color = well.get(x, y);
+                if (indexedAll && indexed[y * columns + x] == color) { continue; }
+
+                indexed[y * columns + x] = color;
+                anyStale = true;
+
+                // Every swap within reach of this square's runs
+                final long bits = ((1L << 6) - 1) << Math.max(0, x - 3) & well.fullRow();
+                for (int sy = Math.max(0, y - 3); sy <= Math.min(rows - 1, y + 2); sy++) { stale[sy] |= bits; }
+            }
+        }
+
+        well.clearChanged();
+        indexedAll = true;
+
+        if (!anyStale) { return; }
+
+        for (int y = 0; y < rows; y++) {
+            long xs = stale[y];
+            stale[y] = 0;
+
+            while (xs != 0) {
+                final int x = Long.numberOfTrailingZeros(xs);
+                xs &= xs - 1;
+
+                setBit(right, x, y, (x + 1) < columns && matches(x, y, x + 1, y));
+                setBit(down, x, y, (y + 1) < rows && matches(x, y, x, y + 1));
+            }
+        }
+    }
+
+    private static void setBit(final long[] board, int x, int y, boolean value) {
+        if (value) {
+            board[y] |= 1L << x;
+        } else {
+            board[y] &= ~(1L << x);
+        }
+    }
+
+    int count() {
+        int count = 0;
+
+        for (int y = 0; y < rows; y++) { count += Long.bitCount(right[y]) + Long.bitCount(down[y]); }
+
+        return count;
+    }
+
+    // No swap left that would match
+    boolean isDead() { return count() == 0; }
+
+    /**
+     * @return some swap that matches, -1 if there's none
+     */
+    int any() {
+        for (int y = rows - 1; y >= 0; y--) { // lowest first, that's where the cascades are
+            if (right[y] != 0) { return pack(Long.numberOfTrailingZeros(right[y]), y, false); }
+            if (down[y] != 0) { return pack(Long.numberOfTrailingZeros(down[y]), y, true); }
+        }
+
+        return -1;
+    }
+
+    void forEach(final SwapConsumer consumer) {
+        for (int y = 0; y < rows; y++) {
+            for (long xs = right[y]; xs != 0; xs &= xs - 1) { consumer.accept(pack(Long.numberOfTrailingZeros(xs), y, false)); }
+            for (long xs = down[y]; xs != 0; xs &= xs - 1) { consumer.accept(pack(Long.numberOfTrailingZeros(xs), y, true)); }
+        }
+    }
+
+    /**
+     * If swapping a = (ax, ay) and b = (bx, by) matches, by the same rules as CrushEngine.select()
+     */
+    boolean matches(int ax, int ay, int bx, int by) {
+        final byte aColor = well.get(ax, ay), bColor = well.get(bx, by);
+
+        if (aColor == Well.EMPTY || aColor == Well.BORDER || bColor == Well.EMPTY || bColor == Well.BORDER) {
+            return false;
+        }
+
+        return stretches(ax, ay, bColor, bx, by, aColor) || stretches(bx, by, aColor, ax, ay, bColor);
+    }
+
+    // If (x, y), with this color, is in a stretch of 3+ once the other square holds otherColor
+    private boolean stretches(int x, int y, byte color, int ox, int oy, byte otherColor) {
+        int run = 1;
+        for (int i = x + 1; i < columns && (i - x) <= 2 && colorAt(i, y, ox, oy, otherColor) == color; i++) { run++; }
+        for (int i = x - 1; i > 0 && (x - i) <= 2 && colorAt(i, y, ox, oy, otherColor) == color; i--) { run++; }
+        if (run >= 3) { return true; }
+
+        run = 1;
+        for (int j = y + 1; j < rows && (j - y) <= 2 && colorAt(x, j, ox, oy, otherColor) == color; j++) { run++; }
+        for (int j = y - 1; j > 0 && (y - j) <= 2 && colorAt(x, j, ox, oy, otherColor) == color; j--) { run++; }
+
+        return run >= 3;
+    }
+
+    private byte colorAt(int x, int y, int ox, int oy, byte otherColor) {
+        return (x == ox && y == oy) ? otherColor : well.get(x, y);
+    }
+}
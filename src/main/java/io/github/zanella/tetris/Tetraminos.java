@@ -1,10 +1,7 @@
 package io.github.zanella.tetris;
 
 import java.awt.*;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-import java.util.Random;
+import java.nio.ByteBuffer;
 
 class Tetraminos {
     static final Color[] COLORS = {
@@ -62,36 +59,123 @@ class Tetraminos {
             }
     };
 
+    // Every piece/rotation is a "shape", see shape(); the tables below are indexed by shape,
+    // the per-square ones by (shape * 4 + square)
+    static final int SHAPES = PIECES.length * 4;
 
-    static class Tetramino {
-        final List<List<Point>> points = new ArrayList<>(4);
+    static final int[] CELL_X = new int[SHAPES * 4], CELL_Y = new int[SHAPES * 4];
 
-        final List<Color> pointsColor;
+    // Bounding box of each shape
+    static final int[] MIN_X = new int[SHAPES], MIN_Y = new int[SHAPES];
+    static final int[] WIDTH = new int[SHAPES], HEIGHT = new int[SHAPES];
 
-        int rotation = 0;
+    // Bit c of ROW_MASKS[shape * 4 + row] is set when the shape has a square at (MIN_X + c, MIN_Y + row)
+    static final long[] ROW_MASKS = new long[SHAPES * 4];
 
-        int x = 5, y = 0;
+    static {
+        for (int p = 0; p < PIECES.length; p++) {
+            for (int r = 0; r < 4; r++) {
+                final int shape = shape(p, r);
 
-        Tetramino(final Point[][] pointsStatic) {
-            for (int i = 0; i < pointsStatic.length; i++) {
-                points.add(
-                        new ArrayList<>(
-                                Arrays.asList(pointsStatic[i])));
-            }
+                int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+                for (int i = 0; i < 4; i++) {
+                    final Point point = PIECES[p][r][i];
+                    CELL_X[shape * 4 + i] = point.x;
+                    CELL_Y[shape * 4 + i] = point.y;
+
+                    minX = Math.min(minX, point.x); maxX = Math.max(maxX, point.x);
+                    minY = Math.min(minY, point.y); maxY = Math.max(maxY, point.y);
+                }
+
+                for (int i = 0; i < 4; i++) {
+                    ROW_MASKS[shape * 4 + (CELL_Y[shape * 4 + i] - minY)] |= 1L << (CELL_X[shape * 4 + i] - minX);
+                }
 
-            pointsColor = new ArrayList<>( points.size() );
-            for (int i = 0; i < points.size(); i++) {
-                final int colorIdx = random.nextInt( COLORS.length);
-                pointsColor.add( COLORS[colorIdx] );
+                MIN_X[shape] = minX;
+                MIN_Y[shape] = minY;
+                WIDTH[shape] = maxX - minX + 1;
+                HEIGHT[shape] = maxY - minY + 1;
             }
         }
     }
 
-    private static Random random = new Random();
+    static final int SPAWN_X = 5, SPAWN_Y = 0; // where every piece starts
+
+    static int shape(int piece, int rotation) { return (piece << 2) | rotation(rotation); }
+
+    // Any rotation, even negative ones, into 0..3
+    static int rotation(int rotation) { return rotation & 3; }
+
+    /**
+     * A piece is just indices into the tables above plus its position; spawning one reuses the instance
+     */
+    static class Tetramino {
+        int piece, rotation;
+
+        int x, y;
+
+        int colors; // palette index of each square, 8 bits apiece
+
+        Tetramino spawn(int piece, int colors) {
+            this.piece = piece;
+            this.colors = colors;
+            this.rotation = 0;
+            this.x = SPAWN_X;
+            this.y = SPAWN_Y;
+
+            return this;
+        }
+
+        Tetramino copyFrom(final Tetramino other) {
+            this.piece = other.piece;
+            this.rotation = other.rotation;
+            this.x = other.x;
+            this.y = other.y;
+            this.colors = other.colors;
+
+            return this;
+        }
 
-    static Tetramino random() {
-        final int i = random.nextInt(PIECES.length);
+        static final int BYTES = 10; // taken by write()
 
-        return new Tetramino( PIECES[i] );
+        void write(final ByteBuffer out) {
+            out.put((byte) piece).put((byte) rotation).putShort((short) x).putShort((short) y).putInt(colors);
+        }
+
+        Tetramino read(final ByteBuffer in) {
+            final int piece = in.get(), rotation = in.get();
+            if (piece < 0 || piece >= PIECES.length || rotation < 0 || rotation > 3) {
+                throw new IllegalArgumentException("No such piece " + piece + " rotated " + rotation);
+            }
+
+            this.piece = piece;
+            this.rotation = rotation;
+            this.x = in.getShort();
+            this.y = in.getShort();
+            this.colors = in.getInt();
+
+            return this;
+        }
+
+        int shape() { return Tetraminos.shape(piece, rotation); }
+
+        int squareX(int i) { return x + CELL_X[(shape() << 2) + i]; }
+
+        int squareY(int i) { return y + CELL_Y[(shape() << 2) + i]; }
+
+        byte color(int i) { return (byte) (colors >>> (i << 3)); }
     }
+
+    // Every square of its own random color, drawn from the game's own random stream so games can be replayed
+    static int randomColors(final SplitMix random) {
+        int colors = 0;
+        for (int square = 0; square < 4; square++) {
+            colors |= (Well.paletteIndex(random.nextInt(COLORS.length)) & 0xFF) << (square << 3);
+        }
+
+        return colors;
+    }
+
+    // Every square the piece's own color
+    static int pieceColors(int piece) { return (Well.paletteIndex(piece) & 0xFF) * 0x01010101; }
 }
@@ -3,207 +3,109 @@ package io.github.zanella.tetris;
 import java.awt.*;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.concurrent.ThreadLocalRandom;
 
 import javax.swing.*;
 
 import static io.github.zanella.tetris.Tetraminos.*;
 
+/**
+ * Plain Tetris: the same engine as TetrisCrush, played by {@link Rules#CLASSIC} with pieces dealt from a bag
+ */
 public class Tetris extends JPanel {
-    private Point pieceOrigin;
-    private int currentPiece;
-    private int rotation;
-    private ArrayList<Integer> nextPieces = new ArrayList<>();
-
-    private long score;
-    private Color[][] well;
+    private final EngineLoop loop; // the only one who touches the engine
 
     private final static int WIDTH = 320, HEIGHT = 640, SQUARE_SIDE_SIZE = 25;
 
-    private final int COLUMNS, ROWS;
-
-    private Tetris(final Dimension dimension) {
-        COLUMNS = dimension.width / SQUARE_SIDE_SIZE;
-        // -1 accounts for the sum of drawing "errors"
-        ROWS = (dimension.height / SQUARE_SIDE_SIZE) - 1;
-    }
-
-    // Creates a border around the well and initializes the dropping piece
-    private void init() {
-        well = new Color[COLUMNS][ROWS];
+    private final static int TAKE_BACKS = 1000; // pieces Z can take back
 
-        for (int i = 0; i < COLUMNS; i++) {
-            for (int j = 0; j < ROWS; j++) {
-                if (i == 0 || i == (COLUMNS - 1) || j == (ROWS - 1)) {
-                    well[i][j] = Color.GRAY;
-                } else {
-                    well[i][j] = Color.BLACK;
-                }
-            }
-        }
-
-        newPiece();
-    }
+    private final int COLUMNS, ROWS;
 
-    private void newPiece() {
-        pieceOrigin = new Point(5, 0);
+    private final static Rectangle SCORE_AREA = new Rectangle(19 * 12, 10, WIDTH - (19 * 12), 20);
 
-        rotation = 0;
+    private final FramePainter painter;
 
-        if (nextPieces.isEmpty()) {
-            Collections.addAll(nextPieces, 0, 1, 2, 3, 4, 5, 6);
-            Collections.shuffle(nextPieces);
-        }
-        currentPiece = nextPieces.remove(0);
-    }
+    private final Metrics metrics = Metrics.of("Tetris");
 
-    // Collision test for the dropping piece
-    private boolean collidesAt(int x, int y, int rotation) {
-        for (Point p : PIECES[currentPiece][rotation]) {
-            if (well[p.x + x][p.y + y] != Color.BLACK) {
-                return true;
-            }
-        }
-        return false;
-    }
+    private long lastLatencyVersion = -1; // frame whose input latency was last recorded, EDT only
 
-    private void rotate(int i) { // Rotates the piece clockwise or counterclockwise
-        int newRotation = (rotation + i) % 4;
-        if (newRotation < 0) {
-            newRotation = 3;
-        }
-        if (!collidesAt(pieceOrigin.x, pieceOrigin.y, newRotation)) {
-            rotation = newRotation;
-        }
-        repaint();
-    }
+    // What was on screen at the last repaintChanged(), so it gets erased
+    private Rectangle lastPiece, lastGhost;
+    private long lastScore;
 
-    private void move(int i) { // Moves the piece horizontally
-        if (!collidesAt(pieceOrigin.x + i, pieceOrigin.y, rotation)) {
-            pieceOrigin.x += i;
-        }
-        repaint();
-    }
+    private Tetris(final Dimension dimension, final long seed) {
+        COLUMNS = dimension.width / SQUARE_SIDE_SIZE;
+        // -1 accounts for the sum of drawing "errors"
+        ROWS = (dimension.height / SQUARE_SIDE_SIZE) - 1;
 
-    private boolean dropDown() { // Drops the piece one line or fixes it to the well if it can't drop
-        final boolean collisionCheck = collidesAt(pieceOrigin.x, pieceOrigin.y + 1, rotation);
+        painter = new FramePainter(COLUMNS, ROWS, SQUARE_SIDE_SIZE + 1, SQUARE_SIDE_SIZE, false);
 
-        if (!collisionCheck) {
-            pieceOrigin.y += 1;
-        } else {
-            fixToWell();
-        }
+        final CrushEngine engine = new CrushEngine(COLUMNS, ROWS, seed, PieceGenerator.BAG, Rules.CLASSIC);
+        engine.setMetrics(metrics);
 
-        repaint();
+        // Make the falling piece drop, faster as the level goes up
+        loop = new EngineLoop(engine, 60, GameClock.Gravity.CLASSIC);
+        loop.clock().setLateness(metrics.tickJitterNanos::record);
 
-        return collisionCheck;
-    }
-
-    private void dropInstant() { // Drops until it can't, instantaneously
-        while ( !dropDown() ) { ; }
+        final Timeline timeline = new Timeline(engine, TAKE_BACKS);
+        engine.setEvents(timeline);
+        loop.setTimeline(timeline);
     }
 
     /**
-     * Make the dropping piece part of the well, so it is available for collision detection.
-     *
-     * It's actually pretty ingenious, it doesn't need to redraw the squares in the "well"
+     * Repaints only what may have changed: the squares of the well that were touched,
+     * where the piece and its ghost were and are now, and the score
      */
-    private void fixToWell() {
-        for (Point p : PIECES[currentPiece][rotation]) {
-            well[pieceOrigin.x + p.x][pieceOrigin.y + p.y] = COLORS[currentPiece];
+    private void repaintChanged(final Frame frame) {
+        final Tetramino currentPiece = frame.piece;
+        final Rectangle piece = painter.well.piece(currentPiece.shape(), currentPiece.x, currentPiece.y);
+        final Rectangle ghost = painter.well.piece(currentPiece.shape(), currentPiece.x, frame.ghostY);
+
+        Rectangle area = painter.well.dirtyArea(frame.well);
+        area = WellPainter.add(area, piece);
+        area = WellPainter.add(area, lastPiece);
+        area = WellPainter.add(area, ghost);
+        area = WellPainter.add(area, lastGhost);
+
+        if (frame.score != lastScore) {
+            area = WellPainter.add(area, SCORE_AREA);
+            lastScore = frame.score;
         }
 
-        clearRows();
+        lastPiece = piece;
+        lastGhost = ghost;
 
-        newPiece();
+        if (area != null) { repaint(area); }
     }
 
-    /**
-     * Shifts down the rows "above" this one
-     *
-     * @param row index of row with no gaps
-     */
-    public void deleteRow(int row) {
-        for (int j = row-1; j > 0; j--) {
-            for (int i = 1; i < COLUMNS; i++) {
-                well[i][j+1] = well[i][j];
-            }
-        }
-    }
+    @Override
+    public void paintComponent(Graphics g) {
+        final long start = System.nanoTime();
+        final Frame frame = loop.frame();
 
-    // Clear completed rows from the field and award score according to
-    // the number of simultaneously cleared rows.
-    public void clearRows() {
-        boolean gap;
-        int numClears = 0;
-
-        // -2 = (0-offset array) && "bottom/limit" row
-        for (int j = (ROWS - 2); j > 0; j--) {
-            gap = false;
-            for (int i = 1; i < COLUMNS; i++) {
-                if (well[i][j] == Color.BLACK) {
-                    gap = true;
-                    break;
-                }
-            }
+        { // Black around the well, then the well, the score and the piece
+            final int imageWidth = painter.well.image().getWidth(), imageHeight = painter.well.image().getHeight();
 
-            if (!gap) {
-                deleteRow(j);
-                j += 1;
-                numClears += 1;
-            }
-        }
+            g.setColor(Color.BLACK);
+            g.fillRect(imageWidth, 0, WIDTH - imageWidth, HEIGHT);
+            g.fillRect(0, imageHeight, WIDTH, HEIGHT - imageHeight);
 
-        switch (numClears) {
-            case 1:
-                score += 100;
-                break;
-            case 2:
-                score += 300;
-                break;
-            case 3:
-                score += 500;
-                break;
-            case 4:
-                score += 800;
-                break;
-        }
-    }
+            final Rectangle redrawn = painter.paint(g, frame, false);
 
-    // Draw the falling piece
-    private void drawPiece(Graphics g) {
-        g.setColor(COLORS[currentPiece]);
-        for (Point p : Tetraminos.PIECES[currentPiece][rotation]) {
-            g.fillRect((p.x + pieceOrigin.x) * (SQUARE_SIDE_SIZE + 1),
-                    (p.y + pieceOrigin.y) * (SQUARE_SIDE_SIZE + 1),
-                    25, 25);
+            // Squares changed after the repaint was requested are in the image, make sure they reach the screen
+            final Rectangle clip = g.getClipBounds();
+            if (redrawn != null && clip != null && !clip.contains(redrawn)) { repaint(redrawn); }
         }
-    }
 
-    @Override
-    public void paintComponent(Graphics g) {
-        { // Paint the well
-            g.setColor(Color.BLACK);
-            g.fillRect(0, 0, WIDTH, HEIGHT);
+        { // How long it took, and how long since the key it answers
+            final long end = System.nanoTime();
+            metrics.paintNanos.record(end - start);
 
-            for (int i = 0; i < COLUMNS; i++) {
-                for (int j = 0; j < ROWS; j++) {
-                    g.setColor(well[i][j]);
-                    g.fillRect((SQUARE_SIDE_SIZE + 1) * i, (SQUARE_SIDE_SIZE + 1) * j,
-                            SQUARE_SIDE_SIZE, SQUARE_SIDE_SIZE);
-                }
+            if (frame.inputNanos != 0 && frame.version != lastLatencyVersion) {
+                metrics.inputLatencyNanos.record(end - frame.inputNanos);
+                lastLatencyVersion = frame.version;
             }
         }
-
-        { // Display the score
-            g.setColor(Color.WHITE);
-            g.drawString("SCORE: " + score, 19 * 12, 25);
-        }
-
-        { // Draw the currently falling piece
-            drawPiece(g);
-        }
     }
 
     private static void gameLoop(final JFrame f, final Tetris game) {
@@ -214,22 +116,14 @@ public class Tetris extends JPanel {
 
             public void keyPressed(KeyEvent e) {
                 switch (e.getKeyCode()) {
-                    case KeyEvent.VK_UP:
-                        game.rotate(-1);
-                        break;
-                    case KeyEvent.VK_DOWN:
-                        game.dropDown();
-                        game.score += 1;
-                        break;
-                    case KeyEvent.VK_LEFT:
-                        game.move(-1);
-                        break;
-                    case KeyEvent.VK_RIGHT:
-                        game.move(+1);
-                        break;
-                    case KeyEvent.VK_SPACE:
-                        game.dropInstant();
-                        break;
+                    case KeyEvent.VK_UP:    game.loop.input(CrushEngine.Input.ROTATE);    break;
+                    case KeyEvent.VK_DOWN:  game.loop.input(CrushEngine.Input.DROP);      break;
+                    case KeyEvent.VK_LEFT:  game.loop.input(CrushEngine.Input.LEFT);      break;
+                    case KeyEvent.VK_RIGHT: game.loop.input(CrushEngine.Input.RIGHT);     break;
+                    case KeyEvent.VK_SPACE: game.loop.input(CrushEngine.Input.HARD_DROP); break;
+                    case KeyEvent.VK_P:     game.loop.input(CrushEngine.Input.PAUSE);     break;
+                    case KeyEvent.VK_R:     game.loop.input(CrushEngine.Input.RESET);     break;
+                    case KeyEvent.VK_Z:     game.loop.undo();                             break;
                     case KeyEvent.VK_ESCAPE:
                         System.exit(0);
                 }
@@ -239,17 +133,8 @@ public class Tetris extends JPanel {
             }
         });
 
-        // Make the falling piece drop every second
-        new Thread() {
-            @Override public void run() {
-                while (true) {
-                    try {
-                        Thread.sleep(1000);
-                        game.dropDown();
-                    } catch ( InterruptedException e ) {}
-                }
-            }
-        }.start();
+        game.loop.setListener(game::repaintChanged);
+        game.loop.start();
     }
 
     public static void main(String[] args) {
@@ -261,10 +146,9 @@ public class Tetris extends JPanel {
         f.setMinimumSize(dimension);
         f.setVisible(true);
 
-        final Tetris game = new Tetris(dimension);
-        game.init();
+        final Tetris game = new Tetris(dimension, Long.getLong("tetris.seed", ThreadLocalRandom.current().nextLong()));
         f.add(game);
 
         gameLoop(f, game);
     }
-}
\ No newline at end of file
+}
@@ -1,370 +1,158 @@
 package io.github.zanella.tetris;
 
-import com.google.common.collect.EvictingQueue;
-
 import java.awt.*;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
-import java.util.*;
-import java.util.List;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.ThreadLocalRandom;
 
 import javax.swing.*;
 
-import static java.lang.Math.abs;
 import static io.github.zanella.tetris.Tetraminos.*;
 
 public class TetrisCrush extends JPanel {
     private JFrame f;
-    private Tetramino currentPiece;
 
-    private long score;
-    private Color[][] well;
+    private final EngineLoop loop; // the only one who touches the engine
 
     private final static int WIDTH = 325, HEIGHT = 650, SQUARE_SIDE_SIZE = 25;
 
-    private final int COLUMNS, ROWS;
-
-    private void init() { // Creates a border around the well and initializes the dropping piece
-       reset();
-
-        newPiece();
-
-        f.add(this);
-
-        setupGameLoop();
-    }
+    private final static int TAKE_BACKS = 1000; // placements and swaps Z can take back
 
-    private void newPiece() { // Puts a new, random piece into the dropping position
-        currentPiece = Tetraminos.random();
-    }
+    private final int COLUMNS, ROWS;
 
-    private boolean collidesAt(int x, int y) { // Collision test for the dropping piece
-        //System.out.println("rotation: " + currentPiece.rotation);
+    private final static Rectangle SCORE_AREA = new Rectangle(19 * 12, 10, WIDTH - (19 * 12), 20);
 
-        try {
-            for (final Point p : currentPiece.points.get(Math.abs(currentPiece.rotation))) {
-                if (well[p.x + x][p.y + y] != Color.BLACK) {
-                    return true;
-                }
-            }
-        } catch (ArrayIndexOutOfBoundsException e) {
-            return true;
-        }
+    private final FramePainter painter;
 
-        return false;
-    }
+    // What was on screen at the last repaintChanged(), so it gets erased
+    private Rectangle lastPiece, lastGhost, lastChosen, lastHint;
+    private long lastScore;
 
-    private void rotate(int i) { // Rotates the piece clockwise or counterclockwise
-        if (currentPiece == null) { return; }
+    private volatile boolean showHint; // toggled with H
 
-        // TODO - mutex w/ dropDown()
+    private final Metrics metrics = Metrics.of("TetrisCrush");
 
-        int newRotation = (currentPiece.rotation + i) % 4;
+    private long lastLatencyVersion = -1; // frame whose input latency was last recorded, EDT only
 
-        final int prevRotation = currentPiece.rotation;
-        currentPiece.rotation = newRotation;
+    private final SpectatorFeed feed; // null unless spectators are let in
 
-        if (collidesAt(currentPiece.x, currentPiece.y)) {
-            currentPiece.rotation = prevRotation;
-        }
+    private void init() { // Hooks the view to the engine and starts the game
+        loop.setListener(frame -> {
+            if (feed != null) { feed.publish(frame); }
 
-        repaint();
-    }
+            repaintChanged(frame);
+        });
 
-    private void movePiece(int i) { // Moves the piece horizontally
-        if (!collidesAt(currentPiece.x + i, currentPiece.y)) {
-            currentPiece.x += i;
-        }
+        f.add(this);
 
-        repaint();
+        setupGameLoop();
     }
 
-    private boolean dropDown() { // Drops the piece one line or fixes it to the well if it can't drop
-        final boolean collisionCheck = collidesAt(currentPiece.x, currentPiece.y + 1);
-
-        if (!collisionCheck) {
-            currentPiece.y += 1;
-        } else {
-            fixToWell();
-        }
-
-        repaint();
+    private Rectangle hintArea(final Frame frame) {
+        if (!showHint || frame.hint < 0) { return null; }
 
-        return collisionCheck;
-    }
+        final int x = SwapHints.x(frame.hint), y = SwapHints.y(frame.hint);
 
-    private void dropInstant() { // Drops until it can't, instantaneously
-        while ( !dropDown() ) { score++; }
+        return SwapHints.vertical(frame.hint) ? painter.well.squares(x, y, 1, 2) : painter.well.squares(x, y, 2, 1);
     }
 
-    /**
-     * Make the dropping piece part of the well, so it is available for collision detection.
-     *
-     * It's actually pretty ingenious, it doesn't need to redraw the squares in the "well"
-     */
-    private void fixToWell() {
-        final Tetramino cp = currentPiece;
-        currentPiece = null;
-
-        for (int i = 0; i < cp.points.get(Math.abs(cp.rotation)).size(); i++) {
-            final Point p = cp.points.get(Math.abs(cp.rotation)).get(i);
+    private Rectangle chosenArea(final Frame frame) {
+        Rectangle area = null;
 
-            well[cp.x + p.x][cp.y + p.y] = cp.pointsColor.get(i);
+        for (int i = 0; i < frame.chosenX.length; i++) {
+            area = WellPainter.add(area, painter.well.squares(frame.chosenX[i], frame.chosenY[i], 1, 1));
         }
 
-        clearRows();
+        return area;
+    }
 
-        newPiece();
+    private void highlightSquare(int mouseX, int mouseY) {
+        loop.select(mouseX / SQUARE_SIDE_SIZE, mouseY / SQUARE_SIDE_SIZE);
     }
 
     /**
-     * Shifts down the rows "above" this one
-     *
-     * @param row index of row with no gaps
+     * Repaints only what changed since the previous frame: the squares of the well that were touched,
+     * where the piece, its ghost, the highlights and the hint were and are now, and the score
      */
-    private void deleteRow(int row) {
-        for (int j = row-1; j > 0; j--) {
-            for (int i = 1; i < COLUMNS; i++) {
-                well[i][j+1] = well[i][j];
-            }
+    private void repaintChanged(final Frame frame) {
+        final Tetramino currentPiece = frame.piece;
+        final Rectangle piece = painter.well.piece(currentPiece.shape(), currentPiece.x, currentPiece.y);
+        final Rectangle ghost = painter.well.piece(currentPiece.shape(), currentPiece.x, frame.ghostY);
+        final Rectangle chosen = chosenArea(frame);
+        final Rectangle hint = hintArea(frame);
+
+        Rectangle area = painter.well.dirtyArea(frame.well);
+        area = WellPainter.add(area, piece);
+        area = WellPainter.add(area, lastPiece);
+        area = WellPainter.add(area, ghost);
+        area = WellPainter.add(area, lastGhost);
+        area = WellPainter.add(area, chosen);
+        area = WellPainter.add(area, lastChosen);
+        area = WellPainter.add(area, hint);
+        area = WellPainter.add(area, lastHint);
+
+        if (frame.score != lastScore) {
+            area = WellPainter.add(area, SCORE_AREA);
+            lastScore = frame.score;
         }
-    }
-
-    private void reset() {
-        score = 0;
-        well = new Color[COLUMNS][ROWS];
-
-        for (int i = 0; i < COLUMNS; i++) {
-            for (int j = 0; j < ROWS; j++) {
-                if (i == 0 || i == (COLUMNS - 1) || j == (ROWS - 1)) {
-                    well[i][j] = Color.GRAY;
-                } else {
-                    well[i][j] = Color.BLACK;
-                }
-            }
-        }
-    }
-
-    // Clear completed rows from the field and award score according to
-    // the number of simultaneously cleared rows.
-    private void clearRows() {
-        boolean gap;
-        int numClears = 0;
-
-        // -2 = (0-offset array) && "bottom/limit" row
-        for (int j = (ROWS - 2); j > 0; j--) {
-            gap = false;
-            for (int i = 1; i < COLUMNS; i++) {
-                if (well[i][j] == Color.BLACK) {
-                    gap = true;
-                    break;
-                }
-            }
-
-            if (!gap) {
-                deleteRow(j);
-                j += 1;
-                numClears += 1;
-            }
-        }
-
-        switch (numClears) {
-            case 1:
-                score += 100;
-                break;
-            case 2:
-                score += 300;
-                break;
-            case 3:
-                score += 500;
-                break;
-            case 4:
-                score += 800;
-                break;
-        }
-    }
 
-    private void drawPiece(Graphics g) { // Draw the falling piece
-        for (int i = 0; i < currentPiece.pointsColor.size(); i++) {
+        lastPiece = piece;
+        lastGhost = ghost;
+        lastChosen = chosen;
+        lastHint = hint;
 
-            final Color c = currentPiece.pointsColor.get(i);
-            g.setColor( currentPiece.pointsColor.get(i) );
-            //System.out.println("color["+i+"]: " + c);
-
-            final Point p = currentPiece.points.get(
-                    Math.abs(currentPiece.rotation)).get(i);
-            final int x = p.x + currentPiece.x;
-            final int y = p.y + currentPiece.y;
-
-            g.fill3DRect((x) * (SQUARE_SIDE_SIZE), (y) * (SQUARE_SIDE_SIZE),
-                        SQUARE_SIDE_SIZE, SQUARE_SIDE_SIZE, true);
-        }
+        if (area != null) { repaint(area); }
     }
-
     ///////////////////////////////////////////////////////////////////////////
-    private final EvictingQueue<Point> chosenSquares = EvictingQueue.create(2);
-
-    private void drawHighlighted(final Graphics g) {
-        for (Integer i = chosenSquares.size(); i > 0 ; i--) {
-            final Point p = chosenSquares.remove();
-
-            g.setColor(well[p.x][p.y]);
-            g.draw3DRect(SQUARE_SIDE_SIZE * p.x, SQUARE_SIDE_SIZE * p.y,
-                    SQUARE_SIDE_SIZE, SQUARE_SIDE_SIZE, true);
-
-            System.out.println("Color highlighted: " + well[p.x][p.y]);
-
-            g.setColor(Color.WHITE);
-            g.drawString(i.toString(),
-                    (SQUARE_SIDE_SIZE * p.x) + 12, (SQUARE_SIDE_SIZE * p.y) + 12);
-
-            chosenSquares.add(p);
-        }
-    }
-
-    private void highlightSquare(int mouseX, int mouseY) {
-        final Point p = new Point((mouseX / SQUARE_SIDE_SIZE), (mouseY / SQUARE_SIDE_SIZE));
-        final Color pc = well[p.x][p.y];
-        System.out.println("mouse_x: " + mouseX + ", mouse_y: " + mouseY + " color: " + pc);
-        if (Color.BLACK.equals(pc) || Color.GRAY.equals(pc)) { return; }
-
-        chosenSquares.add(p);
-
-        if (chosenSquares.size() == 2) {
-            final Point a = chosenSquares.remove();
-            final Point b = chosenSquares.remove();
-
-            final int horizontalAndVerticalDist = abs(a.x - b.x) + abs(a.y - b.y);
-            if (horizontalAndVerticalDist == 1) {
-                final Color aColor = well[a.x][a.y];
-                final Color bColor = well[b.x][b.y];
-
-                // TODO - animate switch
-                well[a.x][a.y] = bColor;
-                well[b.x][b.y] = aColor;
-
-                if ( !clearMatches(a, aColor, b, bColor) ) {
-                    well[a.x][a.y] = aColor;
-                    well[b.x][b.y] = bColor;
-                } else {
-                    clearRows();
-                }
-            }
-        }
 
-        repaint();
-    }
-
-    private boolean clearMatches(Point a, Color aColor, Point b, Color bColor) {
-        return clearMatches(a, bColor) || clearMatches(b, aColor);
-    }
-
-    private boolean clearMatches(Point b, Color aColor) {
-        final java.util.List<Point> xStretch = new LinkedList<>( Collections.singletonList(b));
-
-        { // ROW
-            for (int x = b.x + 1; x < COLUMNS; x++) {
-                if (well[x][b.y].equals(aColor)) {
-                    xStretch.add(new Point(x, b.y));
-                } else {
-                    break;
-                }
-            }
-
-            for (int x = b.x - 1; x > 0; x--) {
-                if ( well[x][b.y].equals(aColor) ) {
-                    xStretch.add( new Point(x, b.y) );
-                } else {
-                    break;
-                }
-            }
-        }
-        System.out.print("xStretch: "); xStretch.forEach(System.out::print); System.out.println();
-
-        final List<Point> yStretch = new LinkedList<>( Collections.singletonList(b) );
-
-        { // COLUMN
-            for (int y = b.y + 1; y < ROWS; y++) {
-                if (well[b.x][y].equals(aColor)) {
-                    yStretch.add(new Point(b.x, y));
-                } else {
-                    break;
-                }
-            }
-
-            for (int y = b.y - 1; y > 0 ; y--) {
-                if ( well[b.x][y].equals(aColor) ) {
-                    yStretch.add( new Point(b.x, y) );
-                } else {
-                    break;
-                }
-            }
-        }
-        System.out.print("yStretch: "); yStretch.forEach(System.out::print); System.out.println();
+    @Override
+    public void paintComponent(Graphics g) {
+        final long start = System.nanoTime();
+        final Frame frame = loop.frame();
 
-        boolean ret = false;
-        if (xStretch.size() >= 3) {
-            xStretch.forEach(p -> well[p.x][p.y] = Color.BLACK);
-            ret = true;
-        }
+        { // Paint the well, the score, the piece, the chosen squares and the hint
+            final Rectangle redrawn = painter.paint(g, frame, showHint);
 
-        if (yStretch.size() >= 3) {
-            yStretch.forEach(p -> well[p.x][p.y] = Color.BLACK);
-            ret = true;
+            // Squares changed after the repaint was requested are in the image, make sure they reach the screen
+            final Rectangle clip = g.getClipBounds();
+            if (redrawn != null && clip != null && !clip.contains(redrawn)) { repaint(redrawn); }
         }
 
-        return ret;
-    }
-    ///////////////////////////////////////////////////////////////////////////
+        { // How long it took, and how long since the input this frame answers
+            final long end = System.nanoTime();
+            metrics.paintNanos.record(end - start);
 
-    @Override
-    public void paintComponent(Graphics g) {
-        { // Paint the well
-            g.setColor(Color.BLACK);
-            g.fillRect(0, 0, WIDTH, HEIGHT);
-
-            for (int i = 0; i < COLUMNS; i++) {
-                for (int j = 0; j < ROWS; j++) {
-                    g.setColor(well[i][j]);
-                    g.fill3DRect((SQUARE_SIDE_SIZE) * i, (SQUARE_SIDE_SIZE) * j,
-                            SQUARE_SIDE_SIZE, SQUARE_SIDE_SIZE, true);
-                }
+            if (frame.inputNanos != 0 && frame.version != lastLatencyVersion) {
+                metrics.inputLatencyNanos.record(end - frame.inputNanos);
+                lastLatencyVersion = frame.version;
             }
         }
-
-        { // Display the score
-            g.setColor(Color.WHITE);
-            g.drawString("SCORE: " + score, 19 * 12, 25);
-        }
-
-        { // Draw the currently falling piece
-            drawPiece(g);
-        }
-
-        drawHighlighted(g);
     }
 
     ///////////////////////////////////////////////////////////////////////////
-    private boolean PAUSE = false;
-
     private void addKeyboardListeners() {
         f.addKeyListener(new KeyListener() {
             public void keyTyped(KeyEvent e) {
             }
 
             public void keyPressed(KeyEvent e) {
-                if ((PAUSE) && (e.getKeyCode() != KeyEvent.VK_P)) { return; }
-
                 switch (e.getKeyCode()) {
-                    case KeyEvent.VK_UP:    rotate(-1);                 break;
-                    case KeyEvent.VK_DOWN:  dropDown();     score += 1;   break;
-                    case KeyEvent.VK_LEFT:  movePiece(-1);              break;
-                    case KeyEvent.VK_RIGHT: movePiece(+1);              break;
-                    case KeyEvent.VK_SPACE: dropInstant();                break;
-                    case KeyEvent.VK_P:     PAUSE = !PAUSE;               break;
-                    case KeyEvent.VK_R:     reset();                      break;
+                    case KeyEvent.VK_UP:    loop.input(CrushEngine.Input.ROTATE);    break;
+                    case KeyEvent.VK_DOWN:  loop.input(CrushEngine.Input.DROP);      break;
+                    case KeyEvent.VK_LEFT:  loop.input(CrushEngine.Input.LEFT);      break;
+                    case KeyEvent.VK_RIGHT: loop.input(CrushEngine.Input.RIGHT);     break;
+                    case KeyEvent.VK_SPACE: loop.input(CrushEngine.Input.HARD_DROP); break;
+                    case KeyEvent.VK_P:     loop.input(CrushEngine.Input.PAUSE);     break;
+                    case KeyEvent.VK_R:     loop.input(CrushEngine.Input.RESET);     break;
+                    case KeyEvent.VK_Z:     loop.undo();                             break;
+                    case KeyEvent.VK_H:     showHint = !showHint; repaint();         break;
                     case KeyEvent.VK_ESCAPE:    System.exit(0);
                 }
             }
@@ -399,17 +187,7 @@ public class TetrisCrush extends JPanel {
 
         addMouseListeners();
 
-        new Thread(() -> { // Make the falling piece drop every second
-            while (true) {
-                try {
-                    Thread.sleep(1000);
-
-                    if ( !PAUSE ) { dropDown(); }
-                } catch ( InterruptedException e ) {
-                    System.exit(1);
-                }
-            }
-        }).start();
+        loop.start();
     }
     ///////////////////////////////////////////////////////////////////////////
 
@@ -426,6 +204,77 @@ public class TetrisCrush extends JPanel {
 
         // -1 hides the sum of drawing "errors"
         ROWS = (dimension.height / SQUARE_SIDE_SIZE);// - 1;
+
+        final CrushEngine engine = new CrushEngine(COLUMNS, ROWS, Long.getLong("tetris.seed", ThreadLocalRandom.current().nextLong()));
+        record(engine, System.getProperty("tetris.record"));
+        engine.setMetrics(metrics);
+
+        // Make the falling piece drop, faster as the level goes up
+        loop = new EngineLoop(engine, 60, GameClock.Gravity.CLASSIC);
+        loop.clock().setLateness(metrics.tickJitterNanos::record);
+        feed = spectate(engine, Integer.getInteger("tetris.spectate", -1));
+
+        // Taking back moves, unless the game is logged or against others
+        final String versus = System.getProperty("tetris.versus");
+        final Timeline timeline = (System.getProperty("tetris.record") == null && versus == null)
+                ? new Timeline(engine, TAKE_BACKS) : null;
+        loop.setTimeline(timeline);
+
+        engine.setEvents(EngineEvents.of(versus(engine, loop, versus), (feed != null) ? feed : EngineEvents.NONE,
+                (timeline != null) ? timeline : EngineEvents.NONE));
+
+        painter = new FramePainter(COLUMNS, ROWS, SQUARE_SIDE_SIZE);
+    }
+
+    // With -Dtetris.record=file the game is logged there, to be played again with Replay
+    private static void record(final CrushEngine engine, final String file) {
+        if (file == null) { return; }
+
+        try {
+            final InputLog.Recorder recorder = new InputLog.Recorder(Files.newOutputStream(Paths.get(file)), engine);
+            engine.setRecorder(recorder);
+
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    recorder.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // With -Dtetris.versus=host:port/match the game joins that match on a VersusServer
+    private static EngineEvents versus(final CrushEngine engine, final EngineLoop loop, final String match) {
+        if (match == null) { return EngineEvents.NONE; }
+
+        final int colon = match.lastIndexOf(':'), slash = match.indexOf('/', colon);
+        if (colon < 0 || slash < 0) { throw new IllegalArgumentException("Expected host:port/match, got " + match); }
+
+        try {
+            return new VersusClient(
+                    new InetSocketAddress(match.substring(0, colon), Integer.parseInt(match.substring(colon + 1, slash))),
+                    Integer.parseInt(match.substring(slash + 1)), engine.columns, 60, loop::garbage);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // With -Dtetris.spectate=port anybody can watch the game from that port, see SpectatorFeed
+    private static SpectatorFeed spectate(final CrushEngine engine, int port) {
+        if (port < 0) { return null; }
+
+        final SpectatorFeed feed = new SpectatorFeed(engine.columns, engine.rows);
+
+        try {
+            new SpectatorServer(new InetSocketAddress(port), feed).start();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return feed;
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,163 @@
+package io.github.zanella.tetris;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The last so many placements and swaps of a game, to go back to: set as the engine's events, it keeps
+ * a version of the game every time one settles. A RESET forgets them all, Z can't bring back the game before.
+ *
+ * Versions share rows, copy-on-write: a row equal to one of the previous version's, where it was or a few rows
+ * away (clears move rows down, garbage pushes them up), is that same array. Only the rows the engine says
+ * changed are even looked at, so a version costs the rows that changed, an array of references to all of them
+ * and the engine's state without its well.
+ *
+ * Runs on the engine's thread, as everything that touches the engine. Going back isn't an input, so a game
+ * that went back can't be replayed from its {@link InputLog}.
+ */
+class Timeline implements EngineEvents {
+    private static final int MAX_SHIFT = 4; // rows away from where it was, a shared row is looked for
+
+    static final class Version {
+        final byte[] state; // as CrushEngine.saveState() wrote it, random streams included
+
+        final byte[][] rows; // squares of every row, shared, never written to
+
+        private Version(final byte[] state, final byte[][] rows) {
+            this.state = state;
+            this.rows = rows;
+        }
+    }
+
+    private final CrushEngine engine;
+
+    private final Version[] versions; // a ring, oldest at first
+
+    private int first = 0, size = 0;
+
+    private int top, bottom = -1; // rows changed since the last version
+
+    private final ByteBuffer scratch;
+
+    /**
+     * Starts with the game as it is now
+     *
+     * @param capacity versions kept, the oldest are forgotten
+     */
+    Timeline(final CrushEngine engine, int capacity) {
+        if (capacity < 2) { throw new IllegalArgumentException("At least 2 versions, got " + capacity); }
+
+        this.engine = engine;
+        this.versions = new Version[capacity];
+        this.scratch = ByteBuffer.allocate(engine.stateSize());
+        this.top = 0;
+        this.bottom = engine.rows - 1;
+
+        record();
+    }
+
+    int size() { return size; }
+
+    // 0 is the oldest version kept, size() - 1 the latest
+    Version version(int i) {
+        if (i < 0 || i >= size) { throw new IllegalArgumentException("No version " + i + " of " + size); }
+
+        return versions[(first + i) % versions.length];
+    }
+
+    @Override
+    public void rowsChanged(int top, int bottom) {
+        this.top = Math.min(this.top, top);
+        this.bottom = Math.max(this.bottom, bottom);
+    }
+
+    @Override
+    public void settled() { record(); }
+
+    @Override
+    public void restarted() { // Takes back nothing from the game before, the new one starts here
+        Arrays.fill(versions, null);
+        first = 0;
+        size = 0;
+
+        record();
+    }
+
+    private void record() {
+        final Well well = engine.well();
+        final Version last = (size == 0) ? null : version(size - 1);
+
+        final byte[][] rows = new byte[engine.rows][];
+        for (int y = 0; y < rows.length; y++) {
+            rows[y] = (last != null && (y < top || y > bottom)) ? last.rows[y] : share(well, last, y);
+        }
+
+        scratch.clear();
+        engine.saveState(scratch);
+
+        final Version version = new Version(Arrays.copyOf(scratch.array(), scratch.position()), rows);
+        if (size < versions.length) {
+            size += 1;
+        } else {
+            first = (first + 1) % versions.length;
+        }
+        versions[(first + size - 1) % versions.length] = version;
+
+        top = engine.rows;
+        bottom = -1;
+    }
+
+    // Row y of the well, as an array of the last version if it has one just like it
+    private static byte[] share(final Well well, final Version last, int y) {
+        if (last != null) {
+            for (int d = 0; d <= MAX_SHIFT; d++) {
+                if ((y - d) >= 0 && well.rowEquals(y, last.rows[y - d])) { return last.rows[y - d]; }
+                if (d > 0 && (y + d) < well.rows && well.rowEquals(y, last.rows[y + d])) { return last.rows[y + d]; }
+            }
+        }
+
+        return well.copyRow(y);
+    }
+
+    /**
+     * Takes back the last placement or swap, and whatever the piece did since
+     *
+     * @return false if there's nothing to go back to
+     */
+    boolean undo() { return back(1); }
+
+    /**
+     * Goes back this many placements and swaps, the versions after it are forgotten
+     *
+     * @return false if fewer were kept
+     */
+    boolean back(int steps) {
+        if (steps < 0 || steps >= size) { return false; }
+
+        for (int i = 0; i < steps; i++) { versions[(first + --size) % versions.length] = null; }
+
+        final Version version = version(size - 1);
+
+        scratch.clear();
+        scratch.put(version.state).flip();
+        engine.rewind(scratch, version.rows);
+
+        top = engine.rows; // the well is that version's again
+        bottom = -1;
+
+        return true;
+    }
+
+    /**
+     * A new game, of its own, going on from the i-th version; for trying things out without touching this one.
+     * Costs a new engine and the copy of its rows, however long the game.
+     */
+    CrushEngine branch(int i) {
+        final Version version = version(i);
+        final CrushEngine branch = new CrushEngine(engine.columns, engine.rows, engine.seed, engine.generator, engine.rules);
+
+        branch.rewind(ByteBuffer.wrap(version.state), version.rows);
+
+        return branch;
+    }
+}
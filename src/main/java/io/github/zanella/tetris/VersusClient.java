@@ -0,0 +1,169 @@
+package io.github.zanella.tetris;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+import static io.github.zanella.tetris.Tetraminos.*;
+import static io.github.zanella.tetris.VersusServer.*;
+
+/**
+ * One board's end of a {@link VersusServer} match: set as the engine's events, it tells the server about
+ * placements, cleared rows and topping out, and passes on what comes back.
+ *
+ * Events only go into the output buffer; the client's own thread writes it out once per tick and reads
+ * the server's messages in between.
+ */
+class VersusClient implements EngineEvents, Closeable {
+    interface Listener {
+        // Garbage rows to add, with the hole at this column
+        void garbage(int rows, int hole);
+
+        default void opponentPlaced(int player, int piece, int rotation, int x, int y) {}
+
+        default void opponentToppedOut(int player) {}
+    }
+
+    private final SocketChannel channel;
+
+    private final Selector selector;
+
+    private final int columns;
+
+    private final long tickNanos;
+
+    private final Listener listener;
+
+    private final ByteBuffer in = ByteBuffer.allocate(256), out = ByteBuffer.allocate(BUFFER_BYTES);
+
+    private volatile int player = -1;
+
+    private volatile boolean running = true;
+
+    /**
+     * Joins the match, for a well this many columns wide
+     */
+    VersusClient(final InetSocketAddress server, int match, int columns, int ticksPerSecond, final Listener listener) throws IOException {
+        this.columns = columns;
+        this.tickNanos = TimeUnit.SECONDS.toNanos(1) / ticksPerSecond;
+        this.listener = listener;
+
+        this.channel = SocketChannel.open(server);
+        this.channel.socket().setTcpNoDelay(true);
+        this.channel.configureBlocking(false);
+        this.selector = Selector.open();
+        this.channel.register(selector, SelectionKey.OP_READ);
+
+        send(message(JOIN).putInt(match));
+
+        final Thread t = new Thread(this::run, "versus-client");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    // Number in the match, -1 until the server says
+    int player() { return player; }
+
+    @Override
+    public void placed(final Tetramino piece) {
+        send(message(PLACED).put((byte) piece.piece).put((byte) piece.rotation).put((byte) piece.x).put((byte) piece.y));
+    }
+
+    @Override
+    public void rowsCleared(int rows) { send(message(CLEARED).put((byte) Math.min(rows, Byte.MAX_VALUE))); }
+
+    @Override
+    public void toppedOut() { send(message(TOPPED_OUT)); }
+
+    private void send(final ByteBuffer message) {
+        synchronized (out) {
+            if (out.remaining() < message.position()) {
+                Debug.log("Versus output full, message dropped");
+            } else {
+                out.put(message.array(), 0, message.position());
+            }
+        }
+    }
+
+    private void run() {
+        long tick = System.nanoTime();
+
+        try {
+            while (running) {
+                final long wait = tick - System.nanoTime();
+                if (wait > 0) { selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait))); } else { selector.selectNow(); }
+
+                if (!selector.selectedKeys().isEmpty()) {
+                    selector.selectedKeys().clear();
+                    if (!read()) { break; }
+                }
+
+                if ((System.nanoTime() - tick) >= 0) {
+                    synchronized (out) {
+                        if (out.position() > 0) {
+                            out.flip();
+                            channel.write(out);
+                            out.compact();
+                        }
+                    }
+
+                    tick += tickNanos;
+                    if ((System.nanoTime() - tick) > tickNanos) { tick = System.nanoTime(); }
+                }
+            }
+        } catch (IOException e) {
+            Debug.log("Versus connection lost: " + e);
+        } finally {
+            close();
+            try { selector.close(); } catch (IOException ignored) { }
+        }
+    }
+
+    // @return false once the server is gone
+    private boolean read() throws IOException {
+        if (channel.read(in) < 0) { return false; }
+
+        in.flip();
+        while (in.hasRemaining()) {
+            final byte type = in.get(in.position());
+            if (type <= 0 || type >= BODY.length) { throw new IOException("Not a versus message: " + type); }
+
+            if (in.remaining() < (1 + BODY[type])) { break; }
+
+            in.get();
+            switch (type) {
+                case WELCOME:
+                    player = in.get();
+                    break;
+                case GARBAGE:
+                    final int rows = in.get() & 0xFF, hole = in.get() & 0xFF;
+                    listener.garbage(rows, holeColumn(hole, columns));
+                    break;
+                case OPPONENT_PLACED:
+                    listener.opponentPlaced(in.get() & 0xFF, in.get(), in.get(), in.get(), in.get());
+                    break;
+                case OPPONENT_TOPPED_OUT:
+                    listener.opponentToppedOut(in.get() & 0xFF);
+                    break;
+                default: // not one the server sends
+                    in.position(in.position() + BODY[type]);
+            }
+        }
+        in.compact();
+
+        return true;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+
+        try { channel.close(); } catch (IOException ignored) { }
+    }
+}
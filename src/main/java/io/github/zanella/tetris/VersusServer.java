@@ -0,0 +1,357 @@
+package io.github.zanella.tetris;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Versus matches between any number of boards: whoever clears rows sends garbage to everybody else in
+ * the match, and placements are passed along so clients can show their opponents.
+ *
+ * Non-blocking NIO on a few selector threads: the first also accepts, and hands every new connection to
+ * the threads in turn. Messages only ever go into a connection's output buffer, which its thread writes
+ * out once per tick, so a burst of messages leaves as one write. A client too slow to take them is dropped.
+ *
+ * Every message is a type byte and a body of fixed size, see {@link #BODY}; the client's are JOIN, PLACED,
+ * CLEARED and TOPPED_OUT, the server's WELCOME, OPPONENT_PLACED, GARBAGE and OPPONENT_TOPPED_OUT.
+ */
+class VersusServer implements Closeable {
+    static final byte JOIN = 1;                // int match
+    static final byte WELCOME = 2;             // byte player, numbered in order of arrival
+    static final byte PLACED = 3;              // bytes piece, rotation, x, y
+    static final byte CLEARED = 4;             // byte rows
+    static final byte GARBAGE = 5;             // bytes rows, hole (0 to 255, see holeColumn())
+    static final byte TOPPED_OUT = 6;          // nothing
+    static final byte OPPONENT_PLACED = 7;     // byte player, then as PLACED
+    static final byte OPPONENT_TOPPED_OUT = 8; // byte player
+
+    // Body bytes of every message type
+    static final int[] BODY = { -1, 4, 1, 4, 1, 2, 0, 5, 1 };
+
+    // Garbage rows sent for clearing 0 to 4 rows at once
+    static final int[] ATTACK = { 0, 0, 1, 2, 4 };
+
+    static final int BUFFER_BYTES = 8 * 1024; // output waiting per connection, past it the client is dropped
+
+    private final ServerSocketChannel server;
+
+    private final Loop[] loops;
+
+    private final long tickNanos;
+
+    private final Map<Integer, Match> matches = new ConcurrentHashMap<>();
+
+    private volatile boolean running = false;
+
+    private int next = 0; // loop for the next connection, accepting loop only
+
+    VersusServer(final InetSocketAddress address, int threads, int ticksPerSecond) throws IOException {
+        if (threads <= 0) { throw new IllegalArgumentException("Threads must be positive, got " + threads); }
+
+        this.tickNanos = TimeUnit.SECONDS.toNanos(1) / ticksPerSecond;
+        this.server = ServerSocketChannel.open();
+        this.server.bind(address);
+        this.server.configureBlocking(false);
+
+        this.loops = new Loop[threads];
+        for (int i = 0; i < threads; i++) { loops[i] = new Loop(); }
+
+        this.server.register(loops[0].selector, SelectionKey.OP_ACCEPT);
+    }
+
+    int port() throws IOException { return ((InetSocketAddress) server.getLocalAddress()).getPort(); }
+
+    // Where garbage with this hole leaves the gap, in a well this wide
+    static int holeColumn(int hole, int columns) { return 1 + (hole % (columns - 2)); }
+
+    // Message with the type byte in place, for the body to be put after it
+    static ByteBuffer message(byte type) { return ByteBuffer.allocate(1 + BODY[type]).put(type); }
+
+    VersusServer start() {
+        running = true;
+
+        for (int i = 0; i < loops.length; i++) {
+            final Thread t = new Thread(loops[i], "versus-" + i);
+            t.setDaemon(true);
+            t.start();
+        }
+
+        return this;
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+
+        for (final Loop loop : loops) { loop.selector.wakeup(); }
+
+        server.close();
+    }
+
+    private final class Loop implements Runnable {
+        final Selector selector;
+
+        final Queue<SocketChannel> incoming = new ConcurrentLinkedQueue<>();
+
+        final List<Connection> connections = new ArrayList<>(); // this thread's
+
+        Loop() throws IOException { this.selector = Selector.open(); }
+
+        @Override
+        public void run() {
+            long tick = System.nanoTime();
+
+            try {
+                while (running) {
+                    final long wait = tick - System.nanoTime();
+                    if (wait > 0) { selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait))); } else { selector.selectNow(); }
+
+                    for (SocketChannel channel; (channel = incoming.poll()) != null; ) {
+                        connections.add(new Connection(channel, channel.register(selector, SelectionKey.OP_READ)));
+                    }
+
+                    for (final SelectionKey key : selector.selectedKeys()) {
+                        if (!key.isValid()) { continue; }
+
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else if (key.isReadable()) {
+                            ((Connection) key.attachment()).read();
+                        }
+                    }
+                    selector.selectedKeys().clear();
+
+                    if ((System.nanoTime() - tick) >= 0) { // Tick: everything written so far goes out
+                        connections.removeIf(c -> !c.flush());
+
+                        tick += tickNanos;
+                        if ((System.nanoTime() - tick) > tickNanos) { tick = System.nanoTime(); }
+                    }
+                }
+            } catch (IOException e) {
+                Debug.log("Versus loop stopped: " + e);
+            } finally {
+                for (final Connection c : connections) { c.close(); }
+                try { selector.close(); } catch (IOException ignored) { }
+            }
+        }
+
+        private void accept() throws IOException {
+            for (SocketChannel channel; (channel = server.accept()) != null; ) {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+
+                final Loop loop = loops[next];
+                next = (next + 1) % loops.length;
+
+                loop.incoming.add(channel);
+                if (loop != this) { loop.selector.wakeup(); }
+            }
+        }
+    }
+
+    private final class Connection {
+        private final SocketChannel channel;
+
+        private final SelectionKey key;
+
+        private final ByteBuffer in = ByteBuffer.allocate(256), out = ByteBuffer.allocate(BUFFER_BYTES);
+
+        private boolean overflow = false; // under out's lock
+
+        private Match match;
+
+        private int player = -1;
+
+        private volatile boolean toppedOut = false; // read by the match, from other threads
+
+        Connection(final SocketChannel channel, final SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+
+            key.attach(this);
+        }
+
+        // From any thread
+        void send(final ByteBuffer message) {
+            synchronized (out) {
+                if (out.remaining() < message.position()) {
+                    overflow = true;
+                } else {
+                    out.put(message.array(), 0, message.position());
+                }
+            }
+        }
+
+        // @return false once the connection is closed
+        boolean flush() {
+            if (!channel.isOpen()) { return false; }
+
+            boolean failed = false;
+            synchronized (out) { // closing takes the match's lock, so it waits until out's is let go
+                if (overflow) {
+                    Debug.log("Versus client too slow, dropped: " + channel);
+                    failed = true;
+                } else if (out.position() > 0) {
+                    try {
+                        out.flip();
+                        channel.write(out);
+                        out.compact();
+                    } catch (IOException e) {
+                        failed = true;
+                    }
+                }
+            }
+
+            if (failed) { close(); }
+
+            return !failed;
+        }
+
+        void read() {
+            try {
+                if (channel.read(in) < 0) {
+                    close();
+                    return;
+                }
+            } catch (IOException e) {
+                close();
+                return;
+            }
+
+            in.flip();
+            while (in.hasRemaining()) {
+                final byte type = in.get(in.position());
+                if (type <= 0 || type >= BODY.length) {
+                    close();
+                    return;
+                }
+
+                if (in.remaining() < (1 + BODY[type])) { break; }
+
+                in.get();
+                handle(type);
+            }
+            in.compact();
+        }
+
+        private void handle(byte type) {
+            if (type == JOIN) {
+                final int id = in.getInt();
+                if (match == null) {
+                    do { // a match its last player just left is gone from the map by the time join() says so
+                        match = matches.computeIfAbsent(id, Match::new);
+                        player = match.join(this);
+                    } while (player < 0);
+                    send(message(WELCOME).put((byte) player));
+                }
+                return;
+            }
+
+            if (match == null) { // nothing counts before joining
+                in.position(in.position() + BODY[type]);
+                return;
+            }
+
+            switch (type) {
+                case PLACED:
+                    toppedOut = false; // started over
+                    final ByteBuffer placed = message(OPPONENT_PLACED).put((byte) player);
+                    for (int i = 0; i < BODY[PLACED]; i++) { placed.put(in.get()); }
+                    match.sendOthers(this, placed);
+                    break;
+                case CLEARED:
+                    final int rows = ATTACK[Math.min(in.get() & 0xFF, ATTACK.length - 1)];
+                    if (rows > 0) { match.sendOthers(this, message(GARBAGE).put((byte) rows).put((byte) match.hole())); }
+                    break;
+                case TOPPED_OUT:
+                    toppedOut = true;
+                    match.sendOthers(this, message(OPPONENT_TOPPED_OUT).put((byte) player));
+                    break;
+                default: // not one a client sends
+                    in.position(in.position() + BODY[type]);
+            }
+        }
+
+        void close() {
+            key.cancel();
+            try { channel.close(); } catch (IOException ignored) { }
+
+            if (match != null) {
+                match.leave(this);
+                match = null;
+            }
+        }
+    }
+
+    private final class Match {
+        private final int id;
+
+        private final List<Connection> players = new ArrayList<>();
+
+        private int joined = 0; // players ever, for numbering them
+
+        private boolean over = false; // everybody left, it's no longer in matches
+
+        private final SplittableRandom holes;
+
+        Match(int id) {
+            this.id = id;
+            this.holes = new SplittableRandom(id);
+        }
+
+        // @return the player's number, -1 if the match is over and a new one has to be looked up
+        synchronized int join(final Connection c) {
+            if (over) { return -1; }
+
+            players.add(c);
+
+            return joined++;
+        }
+
+        synchronized void leave(final Connection c) {
+            players.remove(c);
+
+            if (players.isEmpty()) {
+                over = true;
+                matches.remove(id, this);
+            }
+        }
+
+        synchronized int hole() { return holes.nextInt(256); }
+
+        // Garbage only goes to players still playing
+        synchronized void sendOthers(final Connection from, final ByteBuffer message) {
+            final boolean garbage = message.get(0) == GARBAGE;
+
+            for (final Connection c : players) {
+                if (c != from && !(garbage && c.toppedOut)) { c.send(message); }
+            }
+        }
+    }
+
+    /**
+     * Hosts matches on the given port, with as many selector threads as asked for (2 by default)
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        final int port = (args.length > 0) ? Integer.parseInt(args[0]) : 7777;
+        final int threads = (args.length > 1) ? Integer.parseInt(args[1]) : 2;
+
+        new VersusServer(new InetSocketAddress(port), threads, 60).start();
+
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,414 @@
+package io.github.zanella.tetris;
+
+import java.awt.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static io.github.zanella.tetris.Tetraminos.*;
+
+/**
+ * The well as an occupancy bitboard (one long per row, bit x set when column x is taken)
+ * next to a palette index per cell, so collisions and full rows are just bit operations.
+ *
+ * Columns 0 and (columns - 1) and the last row are the gray border.
+ */
+class Well {
+    static final byte EMPTY = 0, BORDER = 1;
+
+    // EMPTY, BORDER and then every Tetraminos.COLORS, in order
+    static final Color[] PALETTE = new Color[2 + COLORS.length];
+
+    static {
+        PALETTE[EMPTY] = Color.BLACK;
+        PALETTE[BORDER] = Color.GRAY;
+        System.arraycopy(COLORS, 0, PALETTE, 2, COLORS.length);
+    }
+
+    final int columns, rows;
+
+    // Rows are addressed through rowAt (well row -> storage row), so clearing rows only remaps
+    // indices and recycles the cleared storage rows instead of copying everything above them
+    private final int[] rowAt;
+
+    private final long[] occupancy; // by storage row
+
+    private final byte[] cells; // by storage row, one palette index per cell
+
+    private final long fullRow;
+
+    private final int[] cleared; // clearRows() scratch
+
+    private final long[] dirty; // by well row, a bit per square changed since clearDirty()
+
+    private final long[] cleanedUnseen; // dirty squares clearDirty() cleaned before clearChanged() saw them
+
+    private final int[] top; // by column, the highest well row taken, kept up to date by every change
+
+    Well(final int columns, final int rows) {
+        if (columns > Long.SIZE) {
+            throw new IllegalArgumentException("At most " + Long.SIZE + " columns, got " + columns);
+        }
+
+        this.columns = columns;
+        this.rows = rows;
+        this.rowAt = new int[rows];
+        this.occupancy = new long[rows];
+        this.cells = new byte[columns * rows];
+        this.fullRow = (columns == Long.SIZE) ? -1L : (1L << columns) - 1;
+        this.cleared = new int[rows];
+        this.dirty = new long[rows];
+        this.cleanedUnseen = new long[rows];
+        this.top = new int[columns];
+
+        reset();
+    }
+
+    static final int CELL_BITS = 4; // a palette index fits in a nibble, for pack()
+
+    // Bytes pack() takes
+    static int packedSize(int columns, int rows) { return ((columns * rows * CELL_BITS) + 7) / 8; }
+
+    static byte paletteIndex(final int colorIdx) { return (byte) (colorIdx + 2); }
+
+    static byte paletteIndex(final Color color) {
+        for (byte i = 0; i < PALETTE.length; i++) {
+            if (PALETTE[i].equals(color)) { return i; }
+        }
+
+        throw new IllegalArgumentException("Not in palette: " + color);
+    }
+
+    void reset() {
+        for (int j = 0; j < rows; j++) {
+            rowAt[j] = j;
+
+            if (j == (rows - 1)) {
+                occupancy[j] = fullRow;
+                Arrays.fill(cells, j * columns, (j + 1) * columns, BORDER);
+            } else {
+                emptyRow(j);
+            }
+        }
+
+        Arrays.fill(dirty, fullRow);
+
+        findTops();
+    }
+
+    private void emptyRow(int storageRow) {
+        final int start = storageRow * columns;
+
+        occupancy[storageRow] = 1L | (1L << (columns - 1));
+        Arrays.fill(cells, start, start + columns, EMPTY);
+        cells[start] = BORDER;
+        cells[start + columns - 1] = BORDER;
+    }
+
+    // Becomes an exact copy of the other well, changes since its last clearDirty() included
+    void copyFrom(final Well other) {
+        if (other.columns != columns || other.rows != rows) {
+            throw new IllegalArgumentException("Can't copy a " + other.columns + "x" + other.rows + " well");
+        }
+
+        System.arraycopy(other.rowAt, 0, rowAt, 0, rows);
+        System.arraycopy(other.occupancy, 0, occupancy, 0, rows);
+        System.arraycopy(other.cells, 0, cells, 0, cells.length);
+        System.arraycopy(other.dirty, 0, dirty, 0, rows);
+        System.arraycopy(other.cleanedUnseen, 0, cleanedUnseen, 0, rows);
+        System.arraycopy(other.top, 0, top, 0, columns);
+    }
+
+    long dirtyColumns(int y) { return dirty[y]; }
+
+    // For whoever draws the well, see changedColumns() for a second reader
+    void clearDirty() {
+        for (int y = 0; y < rows; y++) {
+            cleanedUnseen[y] |= dirty[y];
+            dirty[y] = 0;
+        }
+    }
+
+    /**
+     * Squares changed since clearChanged(), whether clearDirty() was called in between or not, so a second reader
+     * ({@link SwapHints}) follows the changes without getting in the way of the painter's. Squares still dirty
+     * from before the last clearChanged() are in there too.
+     */
+    long changedColumns(int y) { return dirty[y] | cleanedUnseen[y]; }
+
+    void clearChanged() { Arrays.fill(cleanedUnseen, 0L); }
+
+    // Occupancy bits of a row, bit x set when column x is taken
+    long row(int y) { return occupancy[rowAt[y]]; }
+
+    long fullRow() { return fullRow; }
+
+    /**
+     * Writes every cell, in well order, two to a byte, low nibble first
+     */
+    void pack(final ByteBuffer out) {
+        int pending = -1;
+
+        for (int j = 0; j < rows; j++) {
+            final int from = rowAt[j] * columns;
+
+            for (int i = 0; i < columns; i++) {
+                final int c = cells[from + i];
+
+                if (pending < 0) {
+                    pending = c;
+                } else {
+                    out.put((byte) (pending | (c << CELL_BITS)));
+                    pending = -1;
+                }
+            }
+        }
+
+        if (pending >= 0) { out.put((byte) pending); }
+    }
+
+    /**
+     * Reads back what {@link #pack(ByteBuffer)} wrote, every square ends up dirty
+     */
+    void unpack(final ByteBuffer in) {
+        int packed = 0;
+
+        for (int k = 0; k < cells.length; k++) {
+            if ((k & 1) == 0) { packed = in.get() & 0xFF; }
+
+            final int c = ((k & 1) == 0) ? (packed & 0xF) : (packed >>> CELL_BITS);
+            if (c >= PALETTE.length) { throw new IllegalArgumentException("Not a palette index: " + c); }
+
+            cells[k] = (byte) c;
+        }
+
+        for (int j = 0; j < rows; j++) {
+            rowAt[j] = j;
+            dirty[j] = fullRow;
+
+            long row = 0;
+            for (int i = 0; i < columns; i++) {
+                if (cells[j * columns + i] != EMPTY) { row |= 1L << i; }
+            }
+            occupancy[j] = row;
+        }
+
+        findTops();
+    }
+
+    byte get(int x, int y) { return cells[rowAt[y] * columns + x]; }
+
+    // The squares of row y, a copy
+    byte[] copyRow(int y) {
+        final int from = rowAt[y] * columns;
+
+        return Arrays.copyOfRange(cells, from, from + columns);
+    }
+
+    boolean rowEquals(int y, final byte[] squares) {
+        final int from = rowAt[y] * columns;
+
+        for (int i = 0; i < columns; i++) {
+            if (cells[from + i] != squares[i]) { return false; }
+        }
+
+        return true;
+    }
+
+    /**
+     * Puts these squares in every row, as {@link #copyRow(int)} gave them; only rows that differ get dirty
+     */
+    void setRows(final byte[][] squares) {
+        if (squares.length != rows) { throw new IllegalArgumentException(rows + " rows needed, got " + squares.length); }
+
+        for (int j = 0; j < rows; j++) {
+            if (rowEquals(j, squares[j])) { continue; }
+
+            final int storageRow = rowAt[j];
+            System.arraycopy(squares[j], 0, cells, storageRow * columns, columns);
+
+            long row = 0;
+            for (int i = 0; i < columns; i++) {
+                if (squares[j][i] != EMPTY) { row |= 1L << i; }
+            }
+            occupancy[storageRow] = row;
+            dirty[j] = fullRow;
+        }
+
+        findTops();
+    }
+
+    Color color(int x, int y) { return PALETTE[get(x, y)]; }
+
+    boolean isEmpty(int x, int y) { return ((occupancy[rowAt[y]] >>> x) & 1L) == 0; }
+
+    void set(int x, int y, byte c) {
+        final int storageRow = rowAt[y];
+        cells[storageRow * columns + x] = c;
+        dirty[y] |= 1L << x;
+
+        if (c == EMPTY) {
+            occupancy[storageRow] &= ~(1L << x);
+
+            if (y == top[x]) { top[x] = findTop(x, y + 1); }
+        } else {
+            occupancy[storageRow] |= 1L << x;
+
+            if (y < top[x]) { top[x] = y; }
+        }
+    }
+
+    // Highest row taken in column x, the floor if there's nothing in it
+    int top(int x) { return top[x]; }
+
+    // First row taken in column x, from row `from` down; the floor always is
+    private int findTop(int x, int from) {
+        final long bit = 1L << x;
+
+        int j = from;
+        while (j < (rows - 1) && (occupancy[rowAt[j]] & bit) == 0) { j++; }
+
+        return j;
+    }
+
+    private void findTops() {
+        for (int i = 0; i < columns; i++) { top[i] = findTop(i, 0); }
+    }
+
+    /**
+     * Lowest y the piece gets to dropping straight down from (x, y), which mustn't collide.
+     *
+     * Straight from the column tops when every square is above its column's top, which is where pieces
+     * come from; row by row when the piece slid under an overhang.
+     */
+    int dropY(int piece, int rotation, int x, int y) {
+        final int shape = shape(piece, rotation);
+
+        int landing = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            final int sx = x + CELL_X[(shape << 2) + i], dy = CELL_Y[(shape << 2) + i];
+
+            if ((y + dy) >= top[sx]) { // under an overhang
+                while (!collides(piece, rotation, x, y + 1)) { y++; }
+                return y;
+            }
+
+            landing = Math.min(landing, top[sx] - 1 - dy);
+        }
+
+        return landing;
+    }
+
+    /**
+     * Collision test for a piece whose origin is at (x, y); the walls and floor collide,
+     * squares still above the top row don't.
+     */
+    boolean collides(int piece, int rotation, int x, int y) {
+        final int shape = shape(piece, rotation);
+        final int left = x + MIN_X[shape];
+        final int top = y + MIN_Y[shape];
+        final int height = HEIGHT[shape];
+
+        if (left < 0 || (left + WIDTH[shape]) > columns || (top + height) > rows) {
+            return true;
+        }
+
+        for (int r = Math.max(0, -top); r < height; r++) {
+            if (((ROW_MASKS[(shape << 2) + r] << left) & occupancy[rowAt[top + r]]) != 0) { return true; }
+        }
+
+        return false;
+    }
+
+    boolean isFull(int row) { return occupancy[rowAt[row]] == fullRow; }
+
+    /**
+     * Pushes everything up n rows and fills the n rows above the floor with garbage: a square of this color
+     * in every column but the hole
+     *
+     * @return false if taken squares were pushed out the top
+     */
+    boolean raise(int n, int hole, byte color) {
+        if (n < 0 || n > (rows - 1)) { throw new IllegalArgumentException("Can't raise " + n + " rows"); }
+        if (hole <= 0 || hole >= (columns - 1)) { throw new IllegalArgumentException("Hole must be inside the walls, got " + hole); }
+
+        final long walls = 1L | (1L << (columns - 1));
+        boolean fits = true;
+
+        for (int k = 0; k < n; k++) {
+            final int storageRow = rowAt[0];
+            if ((occupancy[storageRow] & ~walls) != 0) { fits = false; }
+
+            System.arraycopy(rowAt, 1, rowAt, 0, rows - 2);
+            rowAt[rows - 2] = storageRow;
+
+            final int start = storageRow * columns;
+            Arrays.fill(cells, start + 1, start + columns - 1, color);
+            cells[start + hole] = EMPTY;
+            occupancy[storageRow] = fullRow & ~(1L << hole);
+        }
+
+        if (n > 0) {
+            Arrays.fill(dirty, 0, rows - 1, fullRow);
+            findTops();
+        }
+
+        return fits;
+    }
+
+    /**
+     * Shifts down the rows "above" this one, the top row becomes empty
+     *
+     * @param row index of row with no gaps
+     */
+    void deleteRow(int row) {
+        final int storageRow = rowAt[row];
+
+        System.arraycopy(rowAt, 0, rowAt, 1, row);
+        rowAt[0] = storageRow;
+
+        emptyRow(storageRow);
+        Arrays.fill(dirty, 0, row + 1, fullRow);
+
+        // Everything above the row moved down one; the walls go all the way up anyway
+        for (int i = 1; i < (columns - 1); i++) {
+            if (top[i] <= row) { top[i] = findTop(i, top[i] + 1); }
+        }
+    }
+
+    /**
+     * Deletes every full row above the bottom border, in a single pass from the bottom up:
+     * the rows that stay are packed down and the cleared ones come back, empty, at the top
+     *
+     * @return how many rows were cleared
+     */
+    int clearRows() {
+        int numClears = 0, lowestCleared = -1;
+        int to = rows - 2; // -2 = (0-offset array) && "bottom/limit" row
+
+        for (int j = (rows - 2); j >= 0; j--) {
+            final int storageRow = rowAt[j];
+
+            if (j > 0 && occupancy[storageRow] == fullRow) {
+                if (numClears == 0) { lowestCleared = j; }
+                cleared[numClears++] = storageRow;
+            } else {
+                rowAt[to--] = storageRow;
+            }
+        }
+
+        for (int i = 0; i < numClears; i++) {
+            rowAt[to--] = cleared[i];
+            emptyRow(cleared[i]);
+        }
+
+        if (numClears > 0) {
+            Arrays.fill(dirty, 0, lowestCleared + 1, fullRow);
+
+            // Full rows are taken in every column, so none of them is above a top: every top but the walls'
+            // moved down numClears rows, or further if it was cleared itself
+            for (int i = 1; i < (columns - 1); i++) { top[i] = findTop(i, top[i] + numClears); }
+        }
+
+        return numClears;
+    }
+}
@@ -0,0 +1,111 @@
+package io.github.zanella.tetris;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * Keeps the settled well rendered in an off-screen image, redrawing only the squares that differ
+ * from what the image shows, so a frame is one image blit plus whatever moves on top of it.
+ *
+ * Comparing against what is shown, rather than trusting the well's dirty squares, lets it skip
+ * frames (and paint wells that are copies) without missing a change.
+ *
+ * Squares, in the well or not, are drawn from {@link Sprites}.
+ */
+class WellPainter {
+    final int pitch, side; // distance between squares, size of each square
+
+    private final Sprites sprites;
+
+    private final BufferedImage image;
+
+    private final byte[] shown; // palette index in the image of every square, -1 before the first paint
+
+    /**
+     * @param raised fill3DRect squares, as TetrisCrush draws them, instead of flat ones
+     */
+    WellPainter(final int columns, final int rows, final int pitch, final int side, final boolean raised) {
+        this.pitch = pitch;
+        this.side = side;
+        this.sprites = new Sprites(pitch, side, raised);
+        this.image = Sprites.compatibleImage(columns * pitch, rows * pitch, Transparency.OPAQUE);
+        this.shown = new byte[columns * rows];
+
+        Arrays.fill(shown, (byte) -1);
+    }
+
+    BufferedImage image() { return image; }
+
+    void paintSquare(final Graphics g, byte color, int x, int y) { sprites.drawSquare(g, color, pitch * x, pitch * y); }
+
+    void paintOutline(final Graphics g, byte color, int x, int y) { sprites.drawOutline(g, color, pitch * x, pitch * y); }
+
+    // Pixel area of the given squares
+    Rectangle squares(int x, int y, int width, int height) {
+        return new Rectangle(pitch * x, pitch * y, pitch * width, pitch * height);
+    }
+
+    Rectangle piece(int shape, int x, int y) {
+        return squares(x + Tetraminos.MIN_X[shape], y + Tetraminos.MIN_Y[shape],
+                Tetraminos.WIDTH[shape], Tetraminos.HEIGHT[shape]);
+    }
+
+    // Union that tolerates nulls, for building up repaint areas
+    static Rectangle add(final Rectangle area, final Rectangle r) {
+        if (area == null) { return (r == null) ? null : new Rectangle(r); }
+        if (r != null) { area.add(r); }
+
+        return area;
+    }
+
+    /**
+     * @return pixel area of the squares changed since the last {@link #update(Well)}, null if none
+     */
+    Rectangle dirtyArea(final Well well) {
+        Rectangle area = null;
+
+        for (int j = 0; j < well.rows; j++) {
+            final long columns = well.dirtyColumns(j);
+            if (columns == 0) { continue; }
+
+            final int first = Long.numberOfTrailingZeros(columns);
+            final int last = (Long.SIZE - 1) - Long.numberOfLeadingZeros(columns);
+            final Rectangle row = squares(first, j, last - first + 1, 1);
+
+            if (area == null) { area = row; } else { area.add(row); }
+        }
+
+        return area;
+    }
+
+    /**
+     * Redraws the squares that changed since the last update
+     *
+     * @return pixel area that was redrawn, null if nothing was
+     */
+    Rectangle update(final Well well) {
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = -1, maxY = -1;
+        Graphics g = null;
+
+        try {
+            for (int j = 0; j < well.rows; j++) {
+                for (int i = 0; i < well.columns; i++) {
+                    final byte color = well.get(i, j);
+                    if (shown[j * well.columns + i] == color) { continue; }
+
+                    if (g == null) { g = image.getGraphics(); }
+
+                    paintSquare(g, color, i, j);
+                    shown[j * well.columns + i] = color;
+                    minX = Math.min(minX, i); maxX = Math.max(maxX, i);
+                    minY = Math.min(minY, j); maxY = j;
+                }
+            }
+        } finally {
+            if (g != null) { g.dispose(); }
+        }
+
+        return (maxY < 0) ? null : squares(minX, minY, maxX - minX + 1, maxY - minY + 1);
+    }
+}
@@ -0,0 +1,106 @@
+package io.github.zanella.tetris;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BatchEnvTest {
+    private static final int BOARDS = 200, COLUMNS = 12, ROWS = 24, TICKS_PER_DROP = 3;
+
+    private static final CrushEngine.Input[] MOVES = {
+            null, CrushEngine.Input.ROTATE, CrushEngine.Input.DROP, CrushEngine.Input.LEFT,
+            CrushEngine.Input.RIGHT, CrushEngine.Input.HARD_DROP
+    };
+
+    // What step() does to one board, on a plain engine
+    private static void step(final CrushEngine engine, int action, long step) {
+        if (engine.isOver()) { engine.step(CrushEngine.Input.RESET); }
+
+        if (action >= BatchEnv.SWAPS) {
+            final int swap = action - BatchEnv.SWAPS, square = swap >>> 1;
+            final int x = square % COLUMNS, y = square / COLUMNS;
+
+            engine.deselect();
+            engine.select(x, y);
+            if ((swap & 1) == 0) { engine.select(x + 1, y); } else { engine.select(x, y + 1); }
+        } else if (action != BatchEnv.NOOP) {
+            engine.step(MOVES[action]);
+        }
+
+        if ((step % TICKS_PER_DROP) == 0) { engine.tick(); }
+    }
+
+    private static void assertObserved(final BatchEnv env, int b, final CrushEngine engine, long reward) {
+        final Well well = engine.well();
+        for (int y = 0; y < ROWS; y++) {
+            assertEquals("board " + b + ", row " + y, well.row(y), env.occupancy[(b * ROWS) + y]);
+
+            for (int x = 0; x < COLUMNS; x++) { assertEquals(well.get(x, y), env.cells[((b * ROWS) + y) * COLUMNS + x]); }
+        }
+
+        final int p = b * BatchEnv.PIECE_FIELDS;
+        assertEquals(engine.currentPiece().piece, env.piece[p]);
+        assertEquals(engine.currentPiece().rotation, env.piece[p + 1]);
+        assertEquals(engine.currentPiece().x, env.piece[p + 2]);
+        assertEquals(engine.currentPiece().y, env.piece[p + 3]);
+        assertEquals(engine.upcoming(0).piece, env.piece[p + 4]);
+
+        assertEquals(engine.score(), env.score[b]);
+        assertEquals(reward, (long) env.reward[b]);
+        assertEquals(engine.isOver(), env.done[b]);
+    }
+
+    @Test
+    public void everyBoardStepsAsASingleEngine() {
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            final BatchEnv env = new BatchEnv(BOARDS, COLUMNS, ROWS, TICKS_PER_DROP, 11, pool);
+            env.reset();
+
+            final SplittableRandom seeds = new SplittableRandom(11);
+            final CrushEngine[] engines = new CrushEngine[BOARDS];
+            final long[] steps = new long[BOARDS];
+            for (int b = 0; b < BOARDS; b++) {
+                engines[b] = new CrushEngine(COLUMNS, ROWS, seeds.nextLong());
+                assertObserved(env, b, engines[b], 0);
+            }
+
+            final Random random = new Random(5);
+            final int[] actions = new int[BOARDS];
+            for (int s = 0; s < 500; s++) {
+                for (int b = 0; b < BOARDS; b++) { // mostly moves, and some swaps that may match
+                    actions[b] = (random.nextInt(4) == 0) ? BatchEnv.SWAPS + random.nextInt(env.actions() - BatchEnv.SWAPS)
+                            : random.nextInt(BatchEnv.SWAPS);
+                }
+                env.step(actions);
+
+                for (int b = 0; b < BOARDS; b++) {
+                    if (engines[b].isOver()) { steps[b] = 0; }
+
+                    final long before = engines[b].isOver() ? 0 : engines[b].score();
+                    step(engines[b], actions[b], ++steps[b]);
+                    assertObserved(env, b, engines[b], engines[b].score() - before);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void actionsOutOfRangeAreRefused() {
+        final BatchEnv env = new BatchEnv(2, COLUMNS, ROWS, 1);
+        env.reset();
+
+        env.step(new int[] { BatchEnv.NOOP, env.actions() });
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void stepsNeedAReset() {
+        new BatchEnv(2, COLUMNS, ROWS, 1).step(new int[2]);
+    }
+}
@@ -0,0 +1,84 @@
+package io.github.zanella.tetris;
+
+import org.junit.Test;
+
+import static io.github.zanella.tetris.Tetraminos.*;
+import static org.junit.Assert.*;
+
+public class BotTest {
+    // Where the pieces go, as the engine tells it
+    private static final class Placements implements EngineEvents {
+        Tetramino last;
+
+        @Override
+        public void placed(final Tetramino piece) { last = new Tetramino().copyFrom(piece); }
+    }
+
+    private static void playsWhereItSearched(final Rules rules, final PieceGenerator.Factory generator) {
+        for (long seed = 0; seed < 20; seed++) {
+            final CrushEngine engine = new CrushEngine(12, 24, seed, generator, rules);
+            final Placements placements = new Placements();
+            engine.setEvents(placements);
+
+            final Bot bot = new Bot();
+            for (int i = 0; i < 60 && !engine.isOver(); i++) {
+                final Bot.Placement best = bot.best(engine);
+                assertNotNull(best);
+
+                final Well before = new Well(engine.columns, engine.rows);
+                before.copyFrom(engine.well());
+                final long dealt = engine.dealt();
+
+                assertTrue(bot.play(engine));
+                assertEquals("one piece placed", dealt + 1, engine.dealt());
+
+                final Tetramino placed = placements.last;
+                assertEquals("seed " + seed + ", rotation", best.rotation, placed.rotation);
+                assertEquals("seed " + seed + ", column", best.x, placed.x);
+
+                for (int s = 0; s < 4; s++) { // on free squares, resting on something
+                    assertTrue(before.isEmpty(placed.squareX(s), placed.squareY(s)));
+                }
+                assertTrue(before.collides(placed.piece, placed.rotation, placed.x, placed.y + 1));
+            }
+        }
+    }
+
+    @Test
+    public void crushPiecesGoWhereTheSearchPutThem() { playsWhereItSearched(Rules.CRUSH, PieceGenerator.RANDOM); }
+
+    @Test
+    public void tetrisPiecesGoWhereTheSearchPutThem() { playsWhereItSearched(Rules.CLASSIC, PieceGenerator.BAG); }
+
+    @Test
+    public void swapsMatch() {
+        final CrushEngine engine = new CrushEngine(12, 24, 9);
+        final Bot bot = new Bot();
+
+        int swaps = 0;
+        for (int i = 0; i < 100 && !engine.isOver(); i++) {
+            bot.play(engine);
+
+            final long before = engine.score();
+            if (bot.swap(engine)) {
+                assertTrue("a swap scores", engine.score() > before);
+                swaps++;
+            }
+        }
+        assertTrue(swaps > 0);
+    }
+
+    @Test
+    public void classicGamesHaveNoSwaps() {
+        final CrushEngine engine = new CrushEngine(12, 24, 9, PieceGenerator.BAG, Rules.CLASSIC);
+        final Bot bot = new Bot();
+
+        for (int i = 0; i < 30; i++) {
+            bot.play(engine);
+
+            final long before = engine.score();
+            bot.swap(engine);
+            assertEquals(before, engine.score());
+        }
+    }
+}
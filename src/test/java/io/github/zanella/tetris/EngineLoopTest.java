@@ -0,0 +1,62 @@
+package io.github.zanella.tetris;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class EngineLoopTest {
+    private static final GameClock.Gravity NO_GRAVITY = GameClock.Gravity.constant(Integer.MAX_VALUE);
+
+    // Column and row of a colored square, packed as in SwapHints, -1 if the well has none
+    static int coloredSquare(final Well well) {
+        for (int y = well.rows - 1; y >= 0; y--) {
+            for (int x = 0; x < well.columns; x++) {
+                final byte c = well.get(x, y);
+                if (c != Well.EMPTY && c != Well.BORDER) { return SwapHints.pack(x, y, false); }
+            }
+        }
+
+        return -1;
+    }
+
+    @Test
+    public void aClickGoesThroughTheQueueAndChoosesTheSquare() {
+        final EngineLoop loop = new EngineLoop(new CrushEngine(12, 24, 1), 60, NO_GRAVITY);
+
+        assertTrue(loop.input(CrushEngine.Input.HARD_DROP));
+        loop.clock().advance(1);
+
+        final int square = coloredSquare(loop.frame().well);
+        assertTrue(square >= 0);
+
+        assertTrue(loop.select(SwapHints.x(square), SwapHints.y(square)));
+        loop.clock().advance(1);
+
+        final Frame frame = loop.frame();
+        assertArrayEquals(new int[] { SwapHints.x(square) }, frame.chosenX);
+        assertArrayEquals(new int[] { SwapHints.y(square) }, frame.chosenY);
+    }
+
+    @Test
+    public void squaresThatDontFitInACommandAreRefused() {
+        final EngineLoop loop = new EngineLoop(new CrushEngine(12, 24, 1), 60, NO_GRAVITY);
+
+        assertFalse(loop.select(-1, 0));
+        assertFalse(loop.select(0, -1));
+        assertFalse(loop.select(0x1000, 0));
+        assertFalse(loop.select(0, 0x1000));
+    }
+
+    @Test
+    public void selectCommandsDecodeToTheirSquare() {
+        final CrushEngine engine = new CrushEngine(12, 24, 1);
+        engine.step(CrushEngine.Input.HARD_DROP);
+
+        final int square = coloredSquare(engine.well());
+        EngineLoop.apply(engine, EngineLoop.selectCommand(SwapHints.x(square), SwapHints.y(square)));
+
+        assertEquals(1, engine.chosenCount());
+        assertEquals(SwapHints.x(square), engine.chosenX(0));
+        assertEquals(SwapHints.y(square), engine.chosenY(0));
+    }
+}
@@ -0,0 +1,84 @@
+package io.github.zanella.tetris;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SessionHostTest {
+    private static final GameClock.Gravity NO_GRAVITY = GameClock.Gravity.constant(Integer.MAX_VALUE);
+
+    private static void await(final BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) { fail("Timed out"); }
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void inputsAndSwapsPlayAsOnALocalEngine() throws InterruptedException {
+        // The same game played locally, to know where a swap matches
+        final CrushEngine local = new CrushEngine(12, 24, 7, PieceGenerator.RANDOM, Rules.CRUSH);
+
+        try (SessionHost host = new SessionHost(2, 12, 24)) {
+            final SessionHost.Session session = host.open(7, PieceGenerator.RANDOM, Rules.CRUSH, 1000, NO_GRAVITY);
+
+            int drops = 0;
+            while (local.hints().any() < 0) {
+                assertFalse("No swap before topping out", local.isOver());
+
+                local.step(CrushEngine.Input.HARD_DROP);
+                assertTrue(session.input(CrushEngine.Input.HARD_DROP));
+                drops++;
+
+                final int sent = drops;
+                await(() -> host.stats().inputs == sent);
+            }
+            await(() -> session.score() == local.score());
+
+            final int swap = local.hints().any();
+            final long before = local.score();
+            local.select(SwapHints.x(swap), SwapHints.y(swap));
+            local.select(SwapHints.otherX(swap), SwapHints.otherY(swap));
+            assertTrue(local.score() > before);
+
+            assertTrue(session.select(SwapHints.x(swap), SwapHints.y(swap)));
+            assertTrue(session.select(SwapHints.otherX(swap), SwapHints.otherY(swap)));
+            await(() -> session.score() == local.score());
+        }
+    }
+
+    @Test
+    public void squaresThatDontFitInACommandAreRefused() {
+        try (SessionHost host = new SessionHost(1, 12, 24)) {
+            final SessionHost.Session session = host.open(1);
+
+            assertFalse(session.select(-1, 0));
+            assertFalse(session.select(0, 0x1000));
+        }
+    }
+
+    @Test
+    public void sessionsPlayByTheirRules() throws InterruptedException {
+        try (SessionHost host = new SessionHost(1, 12, 24)) {
+            final SessionHost.Session tetris = host.open(1, PieceGenerator.BAG, Rules.CLASSIC, 1000, NO_GRAVITY);
+            final SessionHost.Session crush = host.open(1, PieceGenerator.RANDOM, Rules.CRUSH, 1000, NO_GRAVITY);
+
+            assertSame(Rules.CLASSIC, tetris.rules());
+            assertSame(Rules.CRUSH, crush.rules());
+
+            assertTrue(tetris.input(CrushEngine.Input.HARD_DROP));
+            assertTrue(crush.input(CrushEngine.Input.HARD_DROP));
+
+            await(() -> crush.score() > 0); // a hard drop scores the rows it fell
+            await(() -> host.stats().inputs == 2);
+
+            final long ticks = host.stats().ticks; // both have published the drop by then
+            await(() -> host.stats().ticks > ticks + 20);
+            assertEquals(0, tetris.score()); // and nothing in Tetris
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package io.github.zanella.tetris;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SnapshotTest {
+    private static final PieceGenerator.Factory SEQUENCE = PieceGenerator.sequence(0, 3, 5, 6);
+
+    static byte[] saved(final CrushEngine engine) {
+        final ByteBuffer out = ByteBuffer.allocate(engine.stateSize());
+        engine.save(out);
+
+        return out.array();
+    }
+
+    private static CrushEngine played(final PieceGenerator.Factory generator, final Rules rules) {
+        final CrushEngine engine = new CrushEngine(12, 24, 42, generator, rules);
+        final Bot bot = new Bot();
+
+        for (int i = 0; i < 60 && !engine.isOver(); i++) {
+            bot.play(engine);
+            bot.swap(engine);
+        }
+
+        return engine;
+    }
+
+    private static ByteBuffer written(final CrushEngine engine) {
+        final ByteBuffer buffer = Snapshot.allocate(engine);
+        Snapshot.write(engine, buffer);
+        buffer.flip();
+
+        return buffer;
+    }
+
+    // Both play on exactly alike, pieces and colors included
+    private static void assertGoesOnAlike(final CrushEngine expected, final CrushEngine actual) {
+        final Bot bot = new Bot();
+
+        for (int i = 0; i < 40 && !expected.isOver(); i++) {
+            bot.play(expected);
+            bot.play(actual);
+
+            assertArrayEquals(saved(expected), saved(actual));
+        }
+    }
+
+    private void roundTrip(final PieceGenerator.Factory generator, final Rules rules, boolean fromHeader) {
+        final CrushEngine engine = played(generator, rules);
+        final ByteBuffer buffer = written(engine);
+
+        final CrushEngine read = fromHeader ? Snapshot.read(buffer, null, null) : Snapshot.read(buffer, generator, rules);
+
+        assertFalse(buffer.hasRemaining());
+        assertSame(rules, read.rules);
+        assertSame(generator, read.generator);
+        assertEquals(engine.seed, read.seed);
+        assertEquals(engine.dealt(), read.dealt());
+        assertArrayEquals(saved(engine), saved(read));
+
+        assertGoesOnAlike(engine, read);
+    }
+
+    @Test
+    public void crushGamesComeBackFromTheHeaderAlone() {
+        roundTrip(PieceGenerator.RANDOM, Rules.CRUSH, true);
+        roundTrip(PieceGenerator.BAG, Rules.CRUSH, true);
+    }
+
+    @Test
+    public void tetrisGamesComeBackFromTheHeaderAlone() {
+        roundTrip(PieceGenerator.BAG, Rules.CLASSIC, true);
+        roundTrip(PieceGenerator.RANDOM, Rules.CLASSIC, true);
+    }
+
+    @Test
+    public void customGeneratorsAreGivenBack() {
+        roundTrip(SEQUENCE, Rules.CRUSH, false);
+        roundTrip(SEQUENCE, Rules.CLASSIC, false);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void customGeneratorsCantBeGuessed() {
+        Snapshot.read(written(played(SEQUENCE, Rules.CRUSH)), null, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void anotherGeneratorIsRefused() {
+        Snapshot.read(written(played(PieceGenerator.BAG, Rules.CLASSIC)), PieceGenerator.RANDOM, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void otherRulesAreRefused() {
+        Snapshot.read(written(played(PieceGenerator.BAG, Rules.CLASSIC)), null, Rules.CRUSH);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void aSnapshotCutShortIsRefused() {
+        final ByteBuffer buffer = written(played(PieceGenerator.RANDOM, Rules.CRUSH));
+        buffer.limit(buffer.limit() - 1);
+
+        Snapshot.read(buffer, null, null);
+    }
+
+    @Test
+    public void forksGoOnAlike() {
+        final CrushEngine engine = played(PieceGenerator.BAG, Rules.CLASSIC);
+        final CrushEngine fork = Snapshot.fork(engine, Snapshot.allocate(engine));
+
+        assertGoesOnAlike(engine, fork);
+    }
+
+    @Test
+    public void filesLoadBack() throws IOException {
+        final CrushEngine engine = played(PieceGenerator.BAG, Rules.CLASSIC);
+        final Path file = Files.createTempFile("snapshot", ".bin");
+
+        try {
+            Snapshot.save(engine, file);
+            assertArrayEquals(saved(engine), saved(Snapshot.load(file, null, null)));
+
+            Files.write(file, Arrays.copyOf(Files.readAllBytes(file), Snapshot.size(engine) + 1));
+            try {
+                Snapshot.load(file, null, null);
+                fail("Trailing bytes went unnoticed");
+            } catch (IllegalArgumentException expected) {
+                // the snapshot is followed by something else
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package io.github.zanella.tetris;
+
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SwapHintsTest {
+    private static Set<Integer> swaps(final SwapHints hints) {
+        final Set<Integer> swaps = new TreeSet<>();
+        hints.forEach(swaps::add);
+
+        return swaps;
+    }
+
+    // Every swap, checked one by one
+    private static Set<Integer> bruteForce(final Well well) {
+        final SwapHints check = new SwapHints(well);
+        final Set<Integer> swaps = new TreeSet<>();
+
+        for (int y = 0; y < well.rows; y++) {
+            for (int x = 0; x < well.columns; x++) {
+                if ((x + 1) < well.columns && check.matches(x, y, x + 1, y)) { swaps.add(SwapHints.pack(x, y, false)); }
+                if ((y + 1) < well.rows && check.matches(x, y, x, y + 1)) { swaps.add(SwapHints.pack(x, y, true)); }
+            }
+        }
+
+        return swaps;
+    }
+
+    @Test
+    public void theIndexFollowsTheWellWhoeverClearsItsDirtySquares() {
+        final Random random = new Random(1);
+
+        for (long seed = 0; seed < 10; seed++) {
+            final CrushEngine engine = new CrushEngine(12, 24, seed);
+            final Bot bot = new Bot();
+
+            for (int i = 0; i < 120 && !engine.isOver(); i++) {
+                switch (random.nextInt(4)) {
+                    case 0:  bot.swap(engine);                                break;
+                    case 1:  engine.addGarbage(1, random.nextInt(10) + 1);   break;
+                    default: bot.play(engine);
+                }
+
+                // A painter, or BatchEnv, taking the dirty squares between refreshes
+                if (random.nextBoolean()) { engine.well().clearDirty(); }
+
+                if (random.nextInt(3) == 0) {
+                    assertEquals("seed " + seed + ", move " + i, bruteForce(engine.well()), swaps(engine.hints()));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void anyIsOneOfThem() {
+        final CrushEngine engine = new CrushEngine(12, 24, 4);
+        final Bot bot = new Bot();
+
+        for (int i = 0; i < 60 && !engine.isOver(); i++) {
+            bot.play(engine);
+
+            final SwapHints hints = engine.hints();
+            final int any = hints.any();
+            assertEquals(hints.count() == 0, any < 0);
+            if (any >= 0) { assertTrue(swaps(hints).contains(any)); }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package io.github.zanella.tetris;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TimelineTest {
+    // Plays placements, soft dropped every other one, and swaps; the game as it was at every version
+    private static List<byte[]> play(final CrushEngine engine, final Timeline timeline, int placements) {
+        final List<byte[]> saved = new ArrayList<>();
+        saved.add(SnapshotTest.saved(engine));
+
+        final Bot bot = new Bot();
+        for (int i = 0; i < placements && !engine.isOver(); i++) {
+            if ((i % 2) == 0) {
+                bot.play(engine);
+            } else { // down to where it lands, scoring a point a row
+                final long dealt = engine.dealt();
+                while (engine.dealt() == dealt && !engine.isOver()) { engine.step(CrushEngine.Input.DROP); }
+            }
+            saved.add(SnapshotTest.saved(engine));
+
+            if (bot.swap(engine)) { saved.add(SnapshotTest.saved(engine)); }
+
+            assertEquals(saved.size(), timeline.size());
+        }
+
+        return saved;
+    }
+
+    @Test
+    public void undoingGoesBackToExactlyWhatTheGameWas() {
+        for (long seed = 0; seed < 5; seed++) {
+            final CrushEngine engine = new CrushEngine(12, 24, seed);
+            final Timeline timeline = new Timeline(engine, 1000);
+            engine.setEvents(timeline);
+
+            final List<byte[]> saved = play(engine, timeline, 150);
+
+            for (int i = saved.size() - 2; i >= 0; i--) {
+                assertTrue(timeline.undo());
+                assertArrayEquals("seed " + seed + ", version " + i, saved.get(i), SnapshotTest.saved(engine));
+            }
+            assertFalse(timeline.undo());
+        }
+    }
+
+    @Test
+    public void branchesStartFromTheirVersion() {
+        final CrushEngine engine = new CrushEngine(12, 24, 3);
+        final Timeline timeline = new Timeline(engine, 1000);
+        engine.setEvents(timeline);
+
+        final List<byte[]> saved = play(engine, timeline, 80);
+
+        for (int i = 0; i < saved.size(); i += 7) {
+            assertArrayEquals(saved.get(i), SnapshotTest.saved(timeline.branch(i)));
+        }
+        assertArrayEquals(saved.get(saved.size() - 1), SnapshotTest.saved(engine)); // untouched
+    }
+
+    @Test
+    public void onlyTheLatestVersionsAreKept() {
+        final CrushEngine engine = new CrushEngine(12, 24, 5);
+        final Timeline timeline = new Timeline(engine, 4);
+        engine.setEvents(timeline);
+
+        for (int i = 0; i < 10; i++) { engine.step(CrushEngine.Input.HARD_DROP); }
+
+        assertEquals(4, timeline.size());
+        assertTrue(timeline.back(3));
+        assertFalse(timeline.undo());
+        assertEquals(CrushEngine.PREVIEW + 1 + 7, engine.dealt()); // as after the 7th placement
+    }
+
+    @Test
+    public void aResetCantBeUndone() {
+        final CrushEngine engine = new CrushEngine(12, 24, 1);
+        final Timeline timeline = new Timeline(engine, 100);
+        engine.setEvents(timeline);
+
+        for (int i = 0; i < 3; i++) { engine.step(CrushEngine.Input.HARD_DROP); }
+        engine.step(CrushEngine.Input.RESET);
+        final byte[] restarted = SnapshotTest.saved(engine);
+
+        engine.step(CrushEngine.Input.HARD_DROP);
+
+        assertTrue(timeline.undo());
+        assertArrayEquals(restarted, SnapshotTest.saved(engine));
+        assertEquals(0, engine.score());
+        assertFalse(timeline.undo());
+    }
+}